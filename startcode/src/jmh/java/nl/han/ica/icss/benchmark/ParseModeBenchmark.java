@@ -0,0 +1,45 @@
+package nl.han.ica.icss.benchmark;
+
+import nl.han.ica.icss.Pipeline;
+import nl.han.ica.icss.ast.AST;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the parse modes of Pipeline on large valid input: full LL against two-stage
+ * SLL/LL, and walking a parse tree against building the AST from parse events.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ParseModeBenchmark {
+
+    @Param({"10000"})
+    public int rules;
+
+    @Param({"false", "true"})
+    public boolean twoStageParsing;
+
+    @Param({"true", "false"})
+    public boolean buildParseTree;
+
+    private String source;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        source = new StylesheetGenerator(rules, 20, 2, 4, 42).generate();
+    }
+
+    @Benchmark
+    public AST parse() {
+        Pipeline pipeline = new Pipeline();
+        pipeline.setTwoStageParsing(twoStageParsing);
+        pipeline.setBuildParseTree(buildParseTree);
+        pipeline.parseString(source);
+        return pipeline.getAST();
+    }
+}
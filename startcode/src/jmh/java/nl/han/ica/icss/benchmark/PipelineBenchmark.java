@@ -0,0 +1,134 @@
+package nl.han.ica.icss.benchmark;
+
+import nl.han.ica.icss.Pipeline;
+import nl.han.ica.icss.ast.AST;
+import nl.han.ica.icss.generator.Generator;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks every stage of the Pipeline separately and end-to-end on generated input.
+ *
+ * The check and generate stages do not change a valid AST, so they run on a tree that is
+ * prepared once per trial. Transform rewrites the tree in place and therefore gets a
+ * freshly parsed tree before every invocation. That parse lives in a separate state, so
+ * only the transform benchmark pays for it (the gc profiler counts setup allocations).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PipelineBenchmark {
+
+    @Param({"100", "10000"})
+    public int rules;
+
+    @Param({"20"})
+    public int variables;
+
+    @Param({"2"})
+    public int ifDepth;
+
+    @Param({"4"})
+    public int expressionLength;
+
+    private String source;
+    private Pipeline checkPipeline;
+    private Pipeline parallelCheckPipeline;
+    private Pipeline generatePipeline;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        source = new StylesheetGenerator(rules, variables, ifDepth, expressionLength, 42).generate();
+
+        checkPipeline = parsed();
+        parallelCheckPipeline = parsed();
+        parallelCheckPipeline.setParallelPool(ForkJoinPool.commonPool());
+
+        generatePipeline = parsed();
+        if (!generatePipeline.check()) {
+            throw new IllegalStateException("Generated input has errors: " + generatePipeline.getErrors());
+        }
+        generatePipeline.transform();
+    }
+
+    @State(Scope.Thread)
+    public static class TransformState {
+        final Pipeline pipeline = new Pipeline();
+
+        @Setup(Level.Invocation)
+        public void parse(PipelineBenchmark benchmark) {
+            pipeline.parseString(benchmark.source);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class ParallelTransformState extends TransformState {
+        public ParallelTransformState() {
+            pipeline.setParallelPool(ForkJoinPool.commonPool());
+        }
+    }
+
+    private Pipeline parsed() {
+        Pipeline pipeline = new Pipeline();
+        pipeline.parseString(source);
+        if (!pipeline.isParsed()) {
+            throw new IllegalStateException("Generated input does not parse: " + pipeline.getErrors());
+        }
+        return pipeline;
+    }
+
+    @Benchmark
+    public AST parse() {
+        Pipeline pipeline = new Pipeline();
+        pipeline.parseString(source);
+        return pipeline.getAST();
+    }
+
+    @Benchmark
+    public boolean check() {
+        checkPipeline.clearErrors();
+        return checkPipeline.check();
+    }
+
+    @Benchmark
+    public boolean checkParallel() {
+        parallelCheckPipeline.clearErrors();
+        return parallelCheckPipeline.check();
+    }
+
+    @Benchmark
+    public AST transform(TransformState state) {
+        state.pipeline.transform();
+        return state.pipeline.getAST();
+    }
+
+    @Benchmark
+    public AST transformParallel(ParallelTransformState state) {
+        state.pipeline.transform();
+        return state.pipeline.getAST();
+    }
+
+    @Benchmark
+    public String generate() {
+        return generatePipeline.generate();
+    }
+
+    @Benchmark
+    public String generateParallel() {
+        return new Generator(ForkJoinPool.commonPool()).generate(generatePipeline.getAST());
+    }
+
+    @Benchmark
+    public String endToEnd() {
+        Pipeline pipeline = new Pipeline();
+        pipeline.parseString(source);
+        pipeline.check();
+        pipeline.transform();
+        return pipeline.generate();
+    }
+}
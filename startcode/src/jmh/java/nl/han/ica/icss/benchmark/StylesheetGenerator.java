@@ -0,0 +1,136 @@
+package nl.han.ica.icss.benchmark;
+
+import java.util.Random;
+
+/**
+ * Generates valid ICSS input of configurable size for the benchmarks.
+ *
+ * The shapes are taken from level0.icss - level3.icss: global color, pixel and bool
+ * variables, tag/id/class selectors, pixel expressions with + - and *, and nested
+ * if/else clauses guarded by bool variables.
+ */
+public class StylesheetGenerator {
+
+    private static final String[] TAGS = {"p", "a", "div", "li", "span", "h1"};
+
+    private final int rules;
+    private final int variables;
+    private final int ifDepth;
+    private final int expressionLength;
+    private final Random random;
+
+    public StylesheetGenerator(int rules, int variables, int ifDepth, int expressionLength, long seed) {
+        this.rules = rules;
+        this.variables = variables;
+        this.ifDepth = ifDepth;
+        this.expressionLength = expressionLength;
+        this.random = new Random(seed);
+    }
+
+    public String generate() {
+        StringBuilder out = new StringBuilder();
+        for (int i = 0; i < variables; i++) {
+            appendVariable(out, i);
+        }
+        out.append('\n');
+        for (int i = 0; i < rules; i++) {
+            appendStylerule(out, i);
+        }
+        return out.toString();
+    }
+
+    // Variable i is a color, a pixel size or a bool, depending on i % 3
+    private void appendVariable(StringBuilder out, int i) {
+        switch (i % 3) {
+            case 0:
+                out.append("Color").append(i).append(" := ").append(color()).append(";\n");
+                break;
+            case 1:
+                out.append("Width").append(i).append(" := ").append(pixels()).append(";\n");
+                break;
+            default:
+                out.append("Flag").append(i).append(" := ").append(random.nextBoolean() ? "TRUE" : "FALSE").append(";\n");
+                break;
+        }
+    }
+
+    private void appendStylerule(StringBuilder out, int i) {
+        switch (i % 3) {
+            case 0:
+                out.append(TAGS[(i / 3) % TAGS.length]);
+                break;
+            case 1:
+                out.append("#menu-").append(i);
+                break;
+            default:
+                out.append(".menu-").append(i);
+                break;
+        }
+        out.append(" {\n");
+        out.append("\tbackground-color: ").append(colorValue()).append(";\n");
+        out.append("\twidth: ").append(pixelExpression()).append(";\n");
+        appendIfClause(out, ifDepth, 1);
+        out.append("\theight: ").append(pixels()).append(";\n");
+        out.append("}\n");
+    }
+
+    private void appendIfClause(StringBuilder out, int depth, int indent) {
+        if (depth <= 0) {
+            return;
+        }
+        String tabs = "\t".repeat(indent);
+        out.append(tabs).append("if[").append(boolValue()).append("] {\n");
+        out.append(tabs).append("\tcolor: ").append(colorValue()).append(";\n");
+        appendIfClause(out, depth - 1, indent + 1);
+        out.append(tabs).append("} else {\n");
+        out.append(tabs).append("\theight: ").append(pixelExpression()).append(";\n");
+        out.append(tabs).append("}\n");
+    }
+
+    private String pixelExpression() {
+        StringBuilder expression = new StringBuilder(pixelTerm());
+        for (int i = 1; i < expressionLength; i++) {
+            expression.append(random.nextBoolean() ? " + " : " - ").append(pixelTerm());
+        }
+        return expression.toString();
+    }
+
+    private String pixelTerm() {
+        switch (random.nextInt(3)) {
+            case 0:
+                return pixelValue();
+            case 1:
+                return (1 + random.nextInt(4)) + " * " + pixelValue();
+            default:
+                return pixels();
+        }
+    }
+
+    private String colorValue() {
+        int count = countOf(0);
+        return count > 0 && random.nextBoolean() ? "Color" + (3 * random.nextInt(count)) : color();
+    }
+
+    private String pixelValue() {
+        int count = countOf(1);
+        return count > 0 && random.nextBoolean() ? "Width" + (3 * random.nextInt(count) + 1) : pixels();
+    }
+
+    private String boolValue() {
+        int count = countOf(2);
+        return count > 0 ? "Flag" + (3 * random.nextInt(count) + 2) : (random.nextBoolean() ? "TRUE" : "FALSE");
+    }
+
+    // Number of generated variables of the kind selected by i % 3 == kind
+    private int countOf(int kind) {
+        return variables > kind ? (variables - kind + 2) / 3 : 0;
+    }
+
+    private String color() {
+        return String.format("#%06x", random.nextInt(0x1000000));
+    }
+
+    private String pixels() {
+        return random.nextInt(1000) + "px";
+    }
+}
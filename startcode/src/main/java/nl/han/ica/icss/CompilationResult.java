@@ -0,0 +1,117 @@
+package nl.han.ica.icss;
+
+import nl.han.ica.icss.ast.AST;
+import nl.han.ica.icss.diagnostics.Diagnostic;
+import nl.han.ica.icss.diagnostics.Diagnostics;
+import nl.han.ica.icss.metrics.PipelineMetrics;
+import nl.han.ica.icss.metrics.Stage;
+import nl.han.ica.icss.metrics.StageMetrics;
+
+import java.util.AbstractList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Outcome of one compile by an IcssCompiler: the AST, the diagnostics, the CSS and, if
+ * enabled, the metrics of every stage that ran.
+ *
+ * The lists and metrics are copies that cannot be changed, so a result can be handed
+ * to other threads freely. The AST is not copied: it is the tree the compile ended
+ * with, evaluated if the compile succeeded, and no one else refers to it. Error
+ * messages are only formatted when they are read.
+ */
+public final class CompilationResult {
+
+    private final AST ast;
+    private final List<Diagnostic> diagnostics;
+    private final long errorsFound;
+    //Null when the compile failed
+    private final String css;
+    private final Map<Stage, StageMetrics> stages = new EnumMap<>(Stage.class);
+
+    /**
+     * @param metrics the metrics of the compile, or null when they were not enabled
+     */
+    CompilationResult(AST ast, Diagnostics diagnostics, String css, PipelineMetrics metrics) {
+        this.ast = ast;
+        this.diagnostics = List.copyOf(diagnostics.getAll());
+        this.errorsFound = diagnostics.getFound();
+        this.css = css;
+        if (metrics != null) {
+            for (StageMetrics stage : metrics.getAll()) {
+                stages.put(stage.stage, stage);
+            }
+        }
+    }
+
+    public boolean isSuccess() {
+        return css != null;
+    }
+
+    public AST getAST() {
+        return ast;
+    }
+
+    /**
+     * @return the kept diagnostics, in the order they were found
+     */
+    public List<Diagnostic> getDiagnostics() {
+        return diagnostics;
+    }
+
+    /**
+     * @return the diagnostics as Pipeline.getErrors lists them, formatted when read
+     */
+    public List<String> getErrors() {
+        return new AbstractList<>() {
+            @Override
+            public String get(int index) {
+                return diagnostics.get(index).toString();
+            }
+            @Override
+            public int size() {
+                return diagnostics.size();
+            }
+        };
+    }
+
+    /**
+     * @return the number of errors found, including those beyond the cap
+     */
+    public long getErrorsFound() {
+        return errorsFound;
+    }
+
+    /**
+     * @return the generated CSS, or null when the compile failed
+     */
+    public String getCss() {
+        return css;
+    }
+
+    /**
+     * @return the metrics of stage, or null if it did not run or metrics were not enabled
+     */
+    public StageMetrics getStageMetrics(Stage stage) {
+        return stages.get(stage);
+    }
+
+    /**
+     * @return the metrics of the stages that ran, in pipeline order
+     */
+    public List<StageMetrics> getStages() {
+        return List.copyOf(stages.values());
+    }
+
+    /**
+     * @return the wall time of all stages together
+     */
+    public long getWallNanos() {
+        long total = 0;
+        for (StageMetrics stage : stages.values()) {
+            total += stage.wallNanos;
+        }
+        return total;
+    }
+}
@@ -0,0 +1,113 @@
+package nl.han.ica.icss;
+
+import nl.han.ica.icss.diagnostics.Diagnostics;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Compiles ICSS to CSS, from any number of threads at once.
+ *
+ * A Pipeline holds the state of one compile and is not safe to share. An IcssCompiler
+ * only holds its settings, which are fixed when it is created, and runs every compile
+ * on a Pipeline of its own. Everything a compile produced is returned as a
+ * CompilationResult, which carries the stage metrics too when they are enabled.
+ */
+public final class IcssCompiler {
+
+    private final ForkJoinPool parallelPool;
+    private final int maxErrors;
+    private final boolean failFast;
+    private final boolean metricsEnabled;
+
+    public IcssCompiler() {
+        this(null, Diagnostics.UNLIMITED, false);
+    }
+
+    public IcssCompiler(ForkJoinPool parallelPool, int maxErrors, boolean failFast) {
+        this(parallelPool, maxErrors, failFast, false);
+    }
+
+    /**
+     * @param parallelPool   pool to check, transform and generate large stylesheets on, or
+     *                       null for the calling thread; see Pipeline.setParallelPool
+     * @param maxErrors      number of errors kept per compile
+     * @param failFast       whether a compile stops at maxErrors errors
+     * @param metricsEnabled whether every compile measures its stages; see
+     *                       Pipeline.setMetricsEnabled
+     */
+    public IcssCompiler(ForkJoinPool parallelPool, int maxErrors, boolean failFast, boolean metricsEnabled) {
+        this.parallelPool = parallelPool;
+        this.maxErrors = maxErrors;
+        this.failFast = failFast;
+        this.metricsEnabled = metricsEnabled;
+    }
+
+    public CompilationResult compile(String source) {
+        Pipeline pipeline = newPipeline();
+        pipeline.parseString(source);
+        return finish(pipeline);
+    }
+
+    public CompilationResult compile(Path file) throws IOException {
+        Pipeline pipeline = newPipeline();
+        pipeline.parseFile(file);
+        return finish(pipeline);
+    }
+
+    /**
+     * Compiles source on executor.
+     */
+    public CompletableFuture<CompilationResult> compileAsync(String source, Executor executor) {
+        return CompletableFuture.supplyAsync(() -> compile(source), executor);
+    }
+
+    /**
+     * Compiles file on executor. If it cannot be read, the future completes with an
+     * UncheckedIOException.
+     */
+    public CompletableFuture<CompilationResult> compileAsync(Path file, Executor executor) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return compile(file);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }, executor);
+    }
+
+    private Pipeline newPipeline() {
+        Pipeline pipeline = new Pipeline();
+        pipeline.setParallelPool(parallelPool);
+        pipeline.setMaxErrors(maxErrors);
+        pipeline.setFailFast(failFast);
+        pipeline.setMetricsEnabled(metricsEnabled);
+        return pipeline;
+    }
+
+    private static CompilationResult finish(Pipeline pipeline) {
+        String css = null;
+        if (pipeline.isParsed() && pipeline.check()) {
+            pipeline.transform();
+            css = pipeline.generate();
+        }
+        return new CompilationResult(pipeline.getAST(), pipeline.getDiagnostics(), css, pipeline.getMetrics());
+    }
+
+    public ForkJoinPool getParallelPool() {
+        return parallelPool;
+    }
+    public int getMaxErrors() {
+        return maxErrors;
+    }
+    public boolean isFailFast() {
+        return failFast;
+    }
+    public boolean isMetricsEnabled() {
+        return metricsEnabled;
+    }
+}
@@ -1,23 +1,47 @@
 package nl.han.ica.icss;
 
 import nl.han.ica.icss.ast.AST;
+import nl.han.ica.icss.ast.ASTNode;
+import nl.han.ica.icss.ast.LineTable;
 import nl.han.ica.icss.checker.Checker;
-import nl.han.ica.icss.checker.SemanticError;
+import nl.han.ica.icss.diagnostics.Diagnostic;
+import nl.han.ica.icss.diagnostics.Diagnostics;
+import nl.han.ica.icss.diagnostics.ErrorCode;
+import nl.han.ica.icss.generator.ChannelAppendable;
+import nl.han.ica.icss.generator.CountingAppendable;
 import nl.han.ica.icss.generator.Generator;
+import nl.han.ica.icss.metrics.PipelineMetrics;
+import nl.han.ica.icss.metrics.RuleProfiler;
+import nl.han.ica.icss.metrics.Stage;
+import nl.han.ica.icss.metrics.StageTimer;
 import nl.han.ica.icss.parser.ASTListener;
+import nl.han.ica.icss.parser.ASTParseListener;
+import nl.han.ica.icss.parser.ByteCharStream;
+import nl.han.ica.icss.parser.ChunkedParser;
+import nl.han.ica.icss.parser.DecisionProfile;
 import nl.han.ica.icss.parser.ICSSLexer;
 import nl.han.ica.icss.parser.ICSSParser;
+import nl.han.ica.icss.parser.IncrementalParser;
+import nl.han.ica.icss.parser.PrelexedTokenStream;
 import nl.han.ica.icss.transforms.Evaluator;
 import org.antlr.v4.runtime.*;
 import org.antlr.v4.runtime.atn.ATNConfigSet;
+import org.antlr.v4.runtime.atn.PredictionMode;
 import org.antlr.v4.runtime.dfa.DFA;
 import org.antlr.v4.runtime.misc.ParseCancellationException;
 import org.antlr.v4.runtime.tree.ParseTree;
 import org.antlr.v4.runtime.tree.ParseTreeWalker;
 
-import java.util.ArrayList;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.BitSet;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
 
 public class Pipeline implements ANTLRErrorListener {
 
@@ -25,17 +49,40 @@ public class Pipeline implements ANTLRErrorListener {
     private boolean parsed = false;
     private boolean checked = false;
     private boolean transformed = false;
-    private List<String> errors;
+    private final Diagnostics diagnostics = new Diagnostics();
+    private boolean twoStageParsing = true;
+    private boolean buildParseTree = true;
+    private boolean keepCheckedAST = false;
+    private ForkJoinPool parallelPool;
+    //Null while metrics are disabled
+    private PipelineMetrics metrics;
+    private RuleProfiler profiler;
+    private DecisionProfile decisionProfile;
+
+    //Input of the last parse, used to apply edits incrementally
+    private CharSequence source;
+    private IncrementalParser incrementalParser;
+    //False once check or transform changed the AST, so its nodes can no longer be reused
+    private boolean astReusable = false;
+    //AST that the last transform started from when keepCheckedAST is enabled
+    private AST checkedAST;
 
     public Pipeline() {
-        errors = new ArrayList<>();
     }
 
     public AST getAST() {
         return ast;
     }
+    //Null unless transform ran with keepCheckedAST enabled since the last parse
+    public AST getCheckedAST() {
+        return checkedAST;
+    }
+    //The messages are formatted when they are read
     public List<String> getErrors() {
-        return errors;
+        return diagnostics.getMessages();
+    }
+    public Diagnostics getDiagnostics() {
+        return diagnostics;
     }
     public boolean isParsed() {
         return parsed;
@@ -47,76 +94,440 @@ public class Pipeline implements ANTLRErrorListener {
         return transformed;
     }
 
+    /*
+     When enabled (the default), the input is first parsed with SLL prediction and a
+     bail-out error strategy. Only if that fails it is parsed again in full LL mode
+     with normal error reporting. Both produce the same AST for valid input.
+     */
+    public void setTwoStageParsing(boolean twoStageParsing) {
+        this.twoStageParsing = twoStageParsing;
+    }
+    public boolean isTwoStageParsing() {
+        return twoStageParsing;
+    }
+
+    /*
+     When disabled, the AST is built by a parse listener while parsing, and no
+     Antlr parse tree is kept. The resulting AST is the same.
+     */
+    public void setBuildParseTree(boolean buildParseTree) {
+        this.buildParseTree = buildParseTree;
+    }
+    public boolean isBuildParseTree() {
+        return buildParseTree;
+    }
+
+    /*
+     When enabled, transform leaves the checked AST as it is and replaces it by a new,
+     evaluated AST that shares the unchanged nodes with it. Edits after a transform are
+     then still parsed incrementally. getCheckedAST returns the checked AST.
+     */
+    public void setKeepCheckedAST(boolean keepCheckedAST) {
+        this.keepCheckedAST = keepCheckedAST;
+    }
+    public boolean isKeepCheckedAST() {
+        return keepCheckedAST;
+    }
+
+    /*
+     When set, large input is parsed in chunks, and the style rules are checked,
+     transformed and generated in parallel on this pool. The result is the same as with
+     the default (null): everything on the calling thread.
+     */
+    public void setParallelPool(ForkJoinPool parallelPool) {
+        this.parallelPool = parallelPool;
+    }
+    public ForkJoinPool getParallelPool() {
+        return parallelPool;
+    }
+
+    /*
+     When enabled, every stage records its wall time, CPU time, allocated bytes and
+     number of tokens, nodes or output characters in getMetrics(), and as a flight
+     recorder event. To time lexing on its own, the input is then lexed completely
+     before parsing, so lexer errors are listed before parser errors.
+     Disabled (the default), the stages only test for that.
+     */
+    public void setMetricsEnabled(boolean enabled) {
+        metrics = enabled ? (metrics != null ? metrics : new PipelineMetrics()) : null;
+    }
+    public boolean isMetricsEnabled() {
+        return metrics != null;
+    }
+    public PipelineMetrics getMetrics() {
+        return metrics;
+    }
+
+    /*
+     At most maxErrors errors are kept (default Diagnostics.UNLIMITED); the rest are
+     only counted. With failFast, parsing and checking stop as soon as that many errors
+     were found. Without, the Checker still marks every node with an error.
+     */
+    public void setMaxErrors(int maxErrors) {
+        diagnostics.setMaxErrors(maxErrors);
+    }
+    public int getMaxErrors() {
+        return diagnostics.getMaxErrors();
+    }
+    public void setFailFast(boolean failFast) {
+        diagnostics.setFailFast(failFast);
+    }
+    public boolean isFailFast() {
+        return diagnostics.isFailFast();
+    }
+
+    /*
+     When set, check and transform record the cost of every style rule, if clause and
+     variable assignment in the profiler; see RuleProfiler.report. Unset (the default),
+     nothing is recorded.
+     */
+    public void setProfiler(RuleProfiler profiler) {
+        this.profiler = profiler;
+    }
+    public RuleProfiler getProfiler() {
+        return profiler;
+    }
+
+    /*
+     When set, the parser profiles its prediction decisions and every parse adds its
+     statistics to decisionProfile, which can collect them over many inputs. Input is
+     then never parsed in chunks. Unset (the default), the parser does not profile.
+     */
+    public void setDecisionProfile(DecisionProfile decisionProfile) {
+        this.decisionProfile = decisionProfile;
+    }
+    public DecisionProfile getDecisionProfile() {
+        return decisionProfile;
+    }
+
+    //A decision profile needs every decision predicted the way a full LL parse does
+    private boolean isTwoStage() {
+        return twoStageParsing && decisionProfile == null;
+    }
+
+    //Every parse starts a new run, so the stages of an earlier run are not reported with it
+    private void clearMetrics() {
+        if (metrics != null) {
+            metrics.clear();
+        }
+    }
+
+    private StageTimer startStage() {
+        return metrics == null ? null : metrics.start();
+    }
+    private void endStage(StageTimer timer, Stage stage, long items) {
+        if (timer != null) {
+            metrics.record(timer, timer.stop(stage, items));
+        }
+    }
+    //The nodes are counted after the timer stopped, so counting is not measured as the stage
+    private void endStage(StageTimer timer, Stage stage, ASTNode root) {
+        if (timer != null) {
+            metrics.record(timer, timer.stop(stage, () -> countNodes(root)));
+        }
+    }
+    private static long countNodes(ASTNode node) {
+        long count = 1;
+        int children = node.getChildCount();
+        for (int i = 0; i < children; i++) {
+            ASTNode child = node.getChild(i);
+            if (child != null) {
+                count += countNodes(child);
+            }
+        }
+        return count;
+    }
+
     public void parseString(String input) {
+        clearMetrics();
+        source = input;
+        incrementalParser = null;
 
-        //Lex (with Antlr's generated lexer)
         CharStream inputStream = CharStreams.fromString(input);
-        ICSSLexer lexer = new ICSSLexer(inputStream);
-        lexer.removeErrorListeners();
-        lexer.addErrorListener(this);
-        errors.clear();
-        try {
-            CommonTokenStream tokens = new CommonTokenStream(lexer);
+        //Token indices count code points; only equal to char indices without surrogates
+        parse(inputStream, inputStream.size() == input.length() ? input : null);
+    }
+
+    /*
+     Parses an ASCII file without decoding it: the file is memory-mapped and read by the
+     lexer one byte per character. Input with other characters is rejected before parsing.
+     Once parsed, the text is copied into a String, so the mapping is not held on to.
+     */
+    public void parseFile(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            parse(channel);
+        }
+    }
+
+    /*
+     Like parseFile, for input from any channel. A FileChannel is memory-mapped; other
+     channels are read into a byte buffer first.
+     */
+    public void parse(ReadableByteChannel channel) throws IOException {
+        clearMetrics();
+        ByteBuffer bytes = channel instanceof FileChannel ? map((FileChannel) channel) : readFully(channel);
+        incrementalParser = null;
+        int nonAscii = ByteCharStream.findNonAscii(bytes);
+        if (nonAscii >= 0) {
+            source = null;
+            this.ast = new AST();
+            diagnostics.clear();
+            diagnostics.add(new Diagnostic(ErrorCode.NOT_ASCII, 0, 0,
+                    bytes.get(bytes.position() + nonAscii) & 0xff, nonAscii));
+            parsed = checked = transformed = false;
+            astReusable = false;
+            return;
+        }
+        ByteCharStream inputStream = new ByteCharStream(bytes, null);
+        parse(inputStream, inputStream);
+        //The buffer is not kept after the parse: applyEdit and the line table use a copy
+        source = inputStream.toString();
+        ast.lines = new LineTable(source);
+    }
 
-            //Parse (with Antlr's generated parser)
-            ICSSParser parser = new ICSSParser(tokens);
-            parser.removeErrorListeners();
-            parser.addErrorListener(this);
+    private static ByteBuffer map(FileChannel channel) throws IOException {
+        long size = channel.size() - channel.position();
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("Input too large: " + size + " bytes");
+        }
+        return channel.map(FileChannel.MapMode.READ_ONLY, channel.position(), size);
+    }
 
-            ParseTree parseTree = parser.stylesheet();
+    private static ByteBuffer readFully(ReadableByteChannel channel) throws IOException {
+        ByteBuffer bytes = ByteBuffer.allocate(8192);
+        while (channel.read(bytes) != -1) {
+            if (!bytes.hasRemaining()) {
+                bytes = ByteBuffer.allocate(bytes.capacity() * 2).put(bytes.flip());
+            }
+        }
+        return bytes.flip();
+    }
 
-            //Extract AST from the Antlr parse tree
-            ASTListener listener = new ASTListener();
-            ParseTreeWalker walker = new ParseTreeWalker();
-            walker.walk(listener, parseTree);
+    private void parse(CharStream inputStream, CharSequence text) {
+        diagnostics.clear();
+        //Large input is parsed in parallel chunks; if that fails it is parsed as a whole for the errors
+        AST chunked = null;
+        if (parallelPool != null && decisionProfile == null && text != null && text.length() >= 2 * ChunkedParser.MIN_CHUNK_SIZE) {
+            StageTimer timer = startStage();
+            chunked = new ChunkedParser(parallelPool).parse(text);
+            endStage(timer, Stage.PARSE, 0);
+        }
+        if (chunked != null) {
+            this.ast = chunked;
+        } else {
+            //Lex (with Antlr's generated lexer)
+            ICSSLexer lexer = new ICSSLexer(inputStream);
+            lexer.removeErrorListeners();
+            lexer.addErrorListener(this);
+            try {
+                CommonTokenStream tokens;
+                if (metrics != null) {
+                    //Lexed up front to be measured, with the errors still reported while parsing
+                    StageTimer timer = startStage();
+                    tokens = new PrelexedTokenStream(lexer, this);
+                    endStage(timer, Stage.LEX, tokens.size());
+                } else {
+                    tokens = new CommonTokenStream(lexer);
+                }
 
-            this.ast = listener.getAST();
+                //Parse (with Antlr's generated parser)
+                StageTimer timer = startStage();
+                ICSSParser parser = new ICSSParser(tokens);
+                if (decisionProfile != null) {
+                    //Full LL with exact ambiguity detection, so fallbacks and ambiguities are counted
+                    parser.setProfile(true);
+                    parser.getInterpreter().setPredictionMode(PredictionMode.LL_EXACT_AMBIG_DETECTION);
+                }
+                if (buildParseTree) {
+                    ParseTree parseTree = isTwoStage() ? parseTwoStage(parser, tokens) : parseLL(parser);
+                    endStage(timer, Stage.PARSE, tokens.size());
+                    timer = startStage();
+                    this.ast = walkParseTree(parseTree);
+                    endStage(timer, Stage.AST_BUILD, ast.root);
+                } else {
+                    //The AST is built while parsing
+                    this.ast = parseWithoutParseTree(parser, tokens, text);
+                    endStage(timer, Stage.PARSE, tokens.size());
+                }
+                if (decisionProfile != null) {
+                    decisionProfile.add(parser.getParseInfo());
+                }
 
-        } catch (RecognitionException e) {
-            this.ast = new AST();
-            errors.add(e.getMessage());
+            } catch (RecognitionException e) {
+                this.ast = new AST();
+                diagnostics.add(new Diagnostic(ErrorCode.PARSE_FAILED, 0, 0, e.getMessage()));
 
-        } catch (ParseCancellationException e) {
-            this.ast = new AST();
-            errors.add("Syntax error");
+            } catch (ParseCancellationException e) {
+                this.ast = new AST();
+                diagnostics.add(new Diagnostic(ErrorCode.SYNTAX_ABORTED, 0, 0));
+            }
+        }
+        if (text != null) {
+            ast.lines = new LineTable(text);
+        }
+        parsed = !diagnostics.hasErrors();
+        checked = transformed = false;
+        astReusable = parsed;
+        checkedAST = null;
+    }
+
+    /*
+     Replaces length characters at offset of the last parsed input by text, and re-parses
+     only the top-level statements that the edit touches. The result is the same as
+     parsing the edited input with parseString, including its errors.
+     */
+    public void applyEdit(int offset, int length, String text) {
+        if (source == null) {
+            throw new IllegalStateException("No parsed text to edit");
+        }
+        clearMetrics();
+        diagnostics.clear();
+        if (incrementalParser == null || !astReusable) {
+            incrementalParser = new IncrementalParser();
+            incrementalParser.parse(source.toString());
+        }
+        //Only a parse of the whole source reports errors, as parseString would
+        incrementalParser.setErrorListener(this);
+        this.ast = incrementalParser.edit(offset, length, text);
+        source = incrementalParser.getSource();
+        ast.lines = new LineTable(source);
+        if (!incrementalParser.getErrors().isEmpty() && !diagnostics.hasErrors()) {
+            diagnostics.add(new Diagnostic(ErrorCode.SYNTAX_ABORTED, 0, 0));
         }
-        parsed = errors.isEmpty();
+        parsed = !diagnostics.hasErrors();
         checked = transformed = false;
+        astReusable = parsed;
+        checkedAST = null;
+    }
+
+    //Extract AST from the Antlr parse tree
+    private AST walkParseTree(ParseTree parseTree) {
+        ASTListener listener = new ASTListener();
+        ParseTreeWalker walker = new ParseTreeWalker();
+        walker.walk(listener, parseTree);
+        return listener.getAST();
+    }
+
+    private AST parseWithoutParseTree(ICSSParser parser, CommonTokenStream tokens, CharSequence source) {
+        //Build the AST from parse events. Invalid input bails out and is parsed again
+        //the regular way, so errors are reported exactly as before.
+        ASTParseListener listener = new ASTParseListener(source);
+        parser.setBuildParseTree(false);
+        parser.addParseListener(listener);
+        if (isTwoStage()) {
+            parser.getInterpreter().setPredictionMode(PredictionMode.SLL);
+        }
+        parser.removeErrorListeners();
+        parser.setErrorHandler(new BailErrorStrategy() {
+            //Detach the listener before bailing out, so it does not see the unwinding exits
+            @Override
+            public void recover(Parser recognizer, RecognitionException e) {
+                recognizer.removeParseListeners();
+                super.recover(recognizer, e);
+            }
+            @Override
+            public Token recoverInline(Parser recognizer) throws RecognitionException {
+                recognizer.removeParseListeners();
+                return super.recoverInline(recognizer);
+            }
+        });
+        try {
+            parser.stylesheet();
+            return listener.getAST();
+        } catch (ParseCancellationException e) {
+            tokens.seek(0);
+            parser.reset();
+            parser.removeParseListeners();
+            parser.setBuildParseTree(true);
+            parser.getInterpreter().setPredictionMode(PredictionMode.LL);
+            parser.setErrorHandler(new DefaultErrorStrategy());
+            return walkParseTree(parseLL(parser));
+        }
+    }
+
+    private ParseTree parseLL(ICSSParser parser) {
+        parser.removeErrorListeners();
+        parser.addErrorListener(this);
+        return parser.stylesheet();
+    }
+
+    private ParseTree parseTwoStage(ICSSParser parser, CommonTokenStream tokens) {
+        //Fast pass: SLL prediction, stop at the first error without reporting it
+        parser.getInterpreter().setPredictionMode(PredictionMode.SLL);
+        parser.removeErrorListeners();
+        parser.setErrorHandler(new BailErrorStrategy());
+        try {
+            return parser.stylesheet();
+        } catch (ParseCancellationException e) {
+            //Either a real syntax error or SLL was too weak: redo it in full LL mode
+            tokens.seek(0);
+            parser.reset();
+            parser.getInterpreter().setPredictionMode(PredictionMode.LL);
+            parser.setErrorHandler(new DefaultErrorStrategy());
+            return parseLL(parser);
+        }
     }
     public boolean check() {
             if(ast == null)
                 return false;
 
-           (new Checker()).check(this.ast);
-
-            ArrayList<SemanticError> errors = this.ast.getErrors();
-            if (!errors.isEmpty()) {
-                for (SemanticError e : errors) {
-                    this.errors.add(e.toString());
-                }
-            }
+            StageTimer timer = startStage();
+            long found = diagnostics.getFound();
+            Checker checker = new Checker(parallelPool);
+            checker.setProfiler(profiler);
+            checker.setDiagnostics(diagnostics);
+            checker.check(this.ast);
+            endStage(timer, Stage.CHECK, ast.root);
 
-            checked = errors.isEmpty();
+            checked = diagnostics.getFound() == found;
+            astReusable &= checked;
             transformed = false;
-            return errors.isEmpty();
+            return checked;
     }
 
     public void clearErrors(){
-        errors.clear();
+        diagnostics.clear();
     }
 
     public void transform() {
         if(ast == null)
             return;
 
-        (new Evaluator()).apply(ast);
+        StageTimer timer = startStage();
+        Evaluator evaluator = new Evaluator(parallelPool);
+        evaluator.setProfiler(profiler);
+        if (keepCheckedAST) {
+            checkedAST = ast;
+            ast = evaluator.evaluate(ast);
+        } else {
+            evaluator.apply(ast);
+            astReusable = false;
+        }
+        endStage(timer, Stage.TRANSFORM, ast.root);
 
 
-        transformed = errors.isEmpty();
+        transformed = !diagnostics.hasErrors();
     }
     public String generate() {
-        Generator generator = new Generator();
-        return generator.generate(ast);
+        StageTimer timer = startStage();
+        String css = new Generator(parallelPool).generate(ast);
+        endStage(timer, Stage.GENERATE, css.length());
+        return css;
+    }
+    public void generate(Appendable out) throws IOException {
+        StageTimer timer = startStage();
+        if (timer == null) {
+            new Generator(parallelPool).generate(ast, out);
+        } else {
+            CountingAppendable counter = new CountingAppendable(out);
+            new Generator(parallelPool).generate(ast, counter);
+            endStage(timer, Stage.GENERATE, counter.getCount());
+        }
+    }
+    public void generate(WritableByteChannel channel) throws IOException {
+        ChannelAppendable out = new ChannelAppendable(channel);
+        generate(out);
+        out.flush();
     }
 
     //Catch ANTLR errors
@@ -138,6 +549,9 @@ public class Pipeline implements ANTLRErrorListener {
     @Override
     public void syntaxError(Recognizer<?, ?> arg0, Object arg1, int arg2,
                             int arg3, String arg4, RecognitionException arg5) {
-        errors.add("Syntax error: " + arg4);
+        diagnostics.add(new Diagnostic(ErrorCode.SYNTAX, arg2, arg3, arg4));
+        if (diagnostics.isStopped()) {
+            throw new ParseCancellationException(arg4);
+        }
     }
 }
@@ -0,0 +1,193 @@
+package nl.han.ica.icss;
+
+import nl.han.ica.icss.ast.*;
+import nl.han.ica.icss.ast.operations.AddOperation;
+import nl.han.ica.icss.ast.operations.MultiplyOperation;
+import nl.han.ica.icss.ast.operations.SubtractOperation;
+import nl.han.ica.icss.checker.Checker;
+import nl.han.ica.icss.diagnostics.Diagnostic;
+import nl.han.ica.icss.generator.Generator;
+import nl.han.ica.icss.transforms.Evaluator;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compiles a stylesheet of any size in roughly constant memory.
+ *
+ * The input is read in blocks and cut into top-level statements at the ';' or '}' that
+ * ends them (the language has no strings or comments, so braces can simply be counted).
+ * Every statement is parsed on its own. A global variable assignment is checked and
+ * evaluated, and only its value is kept; an expression of a valid type that evaluates
+ * to nothing is kept instead, over the values of the globals it refers to, so later
+ * statements see the same type as in a Pipeline. A style rule is checked, evaluated and written
+ * to the output straight away, against a small stylesheet holding just the globals it
+ * refers to. Memory therefore grows with the number of global variables, not with the
+ * size of the input.
+ *
+ * Errors are reported in source order. Semantic errors are the same as those of a
+ * Pipeline. Syntax errors are not: every statement is parsed on its own, so a message
+ * can name other tokens than a parse of the whole input would, and the statements
+ * after a syntax error are still checked and compiled, where a Pipeline stops after
+ * parsing. Output written before an error is not taken back, so the output is only
+ * usable if there are no errors.
+ */
+public class StreamingCompiler {
+
+    private static final int BLOCK_SIZE = 8192;
+
+    //Value of every global variable with a valid type, by name. Only holds no literal when
+    //the expression evaluates to null, see snapshot.
+    private final Map<String, Expression> globals = new HashMap<>();
+    private final List<String> errors = new ArrayList<>();
+    private long statements;
+
+    /**
+     * Compiles all of in to out.
+     * @return the errors, empty when the compile succeeded
+     */
+    public List<String> compile(Reader in, Appendable out) throws IOException {
+        globals.clear();
+        errors.clear();
+        statements = 0;
+
+        StringBuilder statement = new StringBuilder();
+        char[] block = new char[BLOCK_SIZE];
+        int depth = 0;
+        int read;
+        while ((read = in.read(block)) != -1) {
+            int start = 0;
+            for (int i = 0; i < read; i++) {
+                char c = block[i];
+                if (c == '{') {
+                    depth++;
+                } else if ((c == '}' && --depth <= 0) || (c == ';' && depth == 0)) {
+                    statement.append(block, start, i + 1 - start);
+                    start = i + 1;
+                    compileStatement(statement.toString(), out);
+                    statement.setLength(0);
+                    depth = 0;
+                }
+            }
+            statement.append(block, start, read - start);
+        }
+        if (!statement.toString().isBlank()) {
+            compileStatement(statement.toString(), out);
+        }
+        return errors;
+    }
+
+    public List<String> getErrors() {
+        return errors;
+    }
+
+    /**
+     * @return the number of top-level statements handled by the last compile
+     */
+    public long getStatements() {
+        return statements;
+    }
+
+    private void compileStatement(String text, Appendable out) throws IOException {
+        statements++;
+        Pipeline parser = new Pipeline();
+        parser.setBuildParseTree(false);
+        parser.parseString(text);
+        if (!parser.isParsed()) {
+            errors.addAll(parser.getErrors());
+            return;
+        }
+        for (ASTNode node : parser.getAST().root.body) {
+            if (node instanceof VariableAssignment) {
+                compileGlobal((VariableAssignment) node);
+            } else if (node instanceof Stylerule) {
+                compileStylerule((Stylerule) node, out);
+            }
+        }
+    }
+
+    private void compileGlobal(VariableAssignment assignment) {
+        AST ast = withReferencedGlobals(assignment);
+        boolean valid = check(ast);
+        Evaluator evaluator = new Evaluator();
+        evaluator.apply(ast);
+        //Without a valid type, later references report the variable as undefined
+        if (valid) {
+            Literal value = evaluator.getGlobalValue(assignment);
+            globals.put(assignment.name.name, value != null ? value : snapshot(assignment.expression));
+        } else {
+            globals.remove(assignment.name.name);
+        }
+    }
+
+    //A copy of a checked expression with its references replaced by the globals they refer to
+    private Expression snapshot(Expression expression) {
+        if (expression instanceof VariableReference) {
+            return globals.get(((VariableReference) expression).name);
+        } else if (expression instanceof Operation) {
+            Operation operation = (Operation) expression;
+            Operation copy;
+            if (operation instanceof AddOperation) {
+                copy = new AddOperation();
+            } else if (operation instanceof SubtractOperation) {
+                copy = new SubtractOperation();
+            } else {
+                copy = new MultiplyOperation();
+            }
+            copy.lhs = snapshot(operation.lhs);
+            copy.rhs = snapshot(operation.rhs);
+            return copy;
+        }
+        return expression;
+    }
+
+    private void compileStylerule(Stylerule rule, Appendable out) throws IOException {
+        AST ast = withReferencedGlobals(rule);
+        if (check(ast)) {
+            new Evaluator().apply(ast);
+            new Generator().generate(ast, out);
+        }
+    }
+
+    private boolean check(AST ast) {
+        Checker checker = new Checker();
+        checker.check(ast);
+        for (Diagnostic diagnostic : checker.getDiagnostics().getAll()) {
+            errors.add(diagnostic.toString());
+        }
+        return !checker.getDiagnostics().hasErrors();
+    }
+
+    //A stylesheet with the current values of the globals statement refers to, followed by statement
+    private AST withReferencedGlobals(ASTNode statement) {
+        Map<String, Expression> referenced = new LinkedHashMap<>();
+        collectReferences(statement, referenced);
+        Stylesheet sheet = new Stylesheet();
+        for (Map.Entry<String, Expression> global : referenced.entrySet()) {
+            sheet.addChild(new VariableAssignment()
+                    .addChild(new VariableReference(global.getKey()))
+                    .addChild(global.getValue()));
+        }
+        sheet.addChild(statement);
+        return new AST(sheet);
+    }
+
+    private void collectReferences(ASTNode node, Map<String, Expression> referenced) {
+        if (node instanceof VariableReference) {
+            String name = ((VariableReference) node).name;
+            Expression value = globals.get(name);
+            if (value != null) {
+                referenced.put(name, value);
+            }
+        }
+        int count = node.getChildCount();
+        for (int i = 0; i < count; i++) {
+            collectReferences(node.getChild(i), referenced);
+        }
+    }
+}
@@ -9,6 +9,8 @@ import java.util.Objects;
 public class AST {
 	//The root of the tree
 	public Stylesheet root;
+	//Lines of the parsed source, to find the line and column of a node; null if unknown
+	public LineTable lines;
 
 	public AST() {
 		root = new Stylesheet();
@@ -28,8 +30,9 @@ public class AST {
 	    if(node.hasError()) {
 	        errors.add(node.getError());
         }
-        for(ASTNode child: node.getChildren()) {
-	        collectErrors(errors,child);
+        int count = node.getChildCount();
+        for(int i = 0; i < count; i++) {
+	        collectErrors(errors,node.getChild(i));
         }
     }
 	@Override
@@ -1,13 +1,18 @@
 package nl.han.ica.icss.ast;
 
 import nl.han.ica.icss.checker.SemanticError;
+import nl.han.ica.icss.diagnostics.Diagnostic;
+import nl.han.ica.icss.diagnostics.ErrorCode;
 
 import java.util.ArrayList;
-import java.util.List;
 
 public class ASTNode {
 
-    private SemanticError error = null;
+    private static final long NO_POSITION = -1;
+
+    private Diagnostic error = null;
+    //Source offsets of the first and last character, packed as start << 32 | stop
+    private long position = NO_POSITION;
 
     /*
      This method is used in the GUI to create an appropriate label
@@ -19,10 +24,27 @@ public class ASTNode {
 
     /*
      Different AST nodes use different attributes to store their children.
-     This method provides a unified interface.
+     This method provides a unified interface. It copies the children into a new list;
+     traversals that run often should use getChildCount and getChild instead.
      */
     public ArrayList<ASTNode> getChildren() {
-        return new ArrayList<>();
+        int count = getChildCount();
+        ArrayList<ASTNode> children = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            children.add(getChild(i));
+        }
+        return children;
+    }
+
+    /*
+     Indexed access to the children in the same order as getChildren, without allocating.
+     Subclasses with children implement both methods.
+     */
+    public int getChildCount() {
+        return 0;
+    }
+    public ASTNode getChild(int index) {
+        throw new IndexOutOfBoundsException(index);
     }
     /*
     By implementing this method in a subclass you can easily create AST nodes
@@ -38,12 +60,48 @@ public class ASTNode {
         return this;
     }
 
+    public void setPosition(int start, int stop) {
+        position = (long) start << 32 | (stop & 0xffffffffL);
+    }
+    public boolean hasPosition() {
+        return position != NO_POSITION;
+    }
+    public int getStartOffset() {
+        return (int) (position >> 32);
+    }
+    public int getStopOffset() {
+        return (int) position;
+    }
+
+    /*
+     Moves the position of this node and all nodes below it by delta characters.
+     */
+    public void shiftPosition(int delta) {
+        if (hasPosition()) {
+            setPosition(getStartOffset() + delta, getStopOffset() + delta);
+        }
+        int count = getChildCount();
+        for (int i = 0; i < count; i++) {
+            ASTNode child = getChild(i);
+            if (child != null) {
+                child.shiftPosition(delta);
+            }
+        }
+    }
+
+    //The message is formatted here, when the error is shown
     public SemanticError getError() {
+        return error == null ? null : new SemanticError(error.getMessage());
+    }
+    public Diagnostic getDiagnostic() {
         return this.error;
     }
 
     public void setError(String description) {
-        this.error = new SemanticError(description);
+        this.error = new Diagnostic(ErrorCode.SEMANTIC, this, description);
+    }
+    public void setError(Diagnostic error) {
+        this.error = error;
     }
 
     public boolean hasError() {
@@ -60,9 +118,10 @@ public class ASTNode {
 		builder.append("[");
 		builder.append(getNodeLabel());	
 		builder.append("|");
-		for(ASTNode child : getChildren()) {
-			child.toString(builder);
-		}	
+		int count = getChildCount();
+		for(int i = 0; i < count; i++) {
+			getChild(i).toString(builder);
+		}
 		builder.append("]");
 	}
 
@@ -71,15 +130,25 @@ public class ASTNode {
         if(! (o instanceof ASTNode))
             return false;
         //Compare all children
-        List<ASTNode> thisChildren = this.getChildren();
-        List<ASTNode> otherChildren = ((ASTNode) o).getChildren();
-        if(otherChildren.size() != thisChildren.size())
+        ASTNode other = (ASTNode) o;
+        int count = this.getChildCount();
+        if(other.getChildCount() != count)
             return false;
-        for(int i = 0; i < thisChildren.size(); i++ ) {
-            if(!thisChildren.get(i).equals(otherChildren.get(i))) {
+        for(int i = 0; i < count; i++ ) {
+            if(!this.getChild(i).equals(other.getChild(i))) {
                 return false;
             }
         }
         return true;
     }
+
+    @Override
+    public int hashCode() {
+        int hash = 1;
+        int count = this.getChildCount();
+        for(int i = 0; i < count; i++ ) {
+            hash = 31 * hash + this.getChild(i).hashCode();
+        }
+        return hash;
+    }
 }
@@ -29,14 +29,18 @@ public class IfClause extends ASTNode {
         return "If_Clause";
     }
     @Override
-    public ArrayList<ASTNode> getChildren() {
-        ArrayList<ASTNode> children = new ArrayList<>();
-        children.add(conditionalExpression);
-        children.addAll(body);
-        if (elseClause!=null)
-            children.add(elseClause);
-
-        return children;
+    public int getChildCount() {
+        return 1 + body.size() + (elseClause != null ? 1 : 0);
+    }
+    @Override
+    public ASTNode getChild(int index) {
+        if (index == 0)
+            return conditionalExpression;
+        if (index <= body.size())
+            return body.get(index - 1);
+        if (index == body.size() + 1 && elseClause != null)
+            return elseClause;
+        throw new IndexOutOfBoundsException(index);
     }
 
     @Override
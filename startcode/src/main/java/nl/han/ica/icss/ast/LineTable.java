@@ -0,0 +1,60 @@
+package nl.han.ica.icss.ast;
+
+import java.util.Arrays;
+
+/**
+ * Turns source offsets into lines and columns. The start offset of every line is
+ * found on the first lookup and then shared by all nodes of the AST, so nodes only
+ * need to keep their offsets.
+ */
+public class LineTable {
+
+    private final CharSequence text;
+    private volatile int[] lineStarts;
+
+    public LineTable(CharSequence text) {
+        this.text = text;
+    }
+
+    /**
+     * @return the line of offset, counting from 1
+     */
+    public int getLine(int offset) {
+        return lineIndex(offset) + 1;
+    }
+
+    /**
+     * @return the column of offset within its line, counting from 0
+     */
+    public int getColumn(int offset) {
+        return offset - lineStarts()[lineIndex(offset)];
+    }
+
+    private int lineIndex(int offset) {
+        int index = Arrays.binarySearch(lineStarts(), offset);
+        //Not a line start: the line is the one starting before offset
+        return index >= 0 ? index : -index - 2;
+    }
+
+    private int[] lineStarts() {
+        int[] starts = lineStarts;
+        if (starts == null) {
+            int count = 1;
+            int length = text.length();
+            for (int i = 0; i < length; i++) {
+                if (text.charAt(i) == '\n') {
+                    count++;
+                }
+            }
+            starts = new int[count];
+            int line = 1;
+            for (int i = 0; i < length; i++) {
+                if (text.charAt(i) == '\n') {
+                    starts[line++] = i + 1;
+                }
+            }
+            lineStarts = starts;
+        }
+        return starts;
+    }
+}
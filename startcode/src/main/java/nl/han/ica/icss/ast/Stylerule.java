@@ -22,12 +22,13 @@ public class Stylerule extends ASTNode {
 		return "Stylerule";
 	}
 	@Override
-	public ArrayList<ASTNode> getChildren() {
-		ArrayList<ASTNode> children = new ArrayList<>();
-		children.addAll(selectors);
-		children.addAll(body);
-
-		return children;
+	public int getChildCount() {
+		return selectors.size() + body.size();
+	}
+	@Override
+	public ASTNode getChild(int index) {
+		int selectorCount = selectors.size();
+		return index < selectorCount ? selectors.get(index) : body.get(index - selectorCount);
 	}
 
     @Override
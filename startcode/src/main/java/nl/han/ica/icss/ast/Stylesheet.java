@@ -13,6 +13,9 @@ public class Stylesheet extends ASTNode {
 
 
 	public ArrayList<ASTNode> body;
+
+	//Number of variable slots needed per scope depth, set by VariableResolver; null if unresolved
+	public int[] scopeSizes;
 	
 	public Stylesheet() {
 		this.body = new ArrayList<>();
@@ -29,6 +32,14 @@ public class Stylesheet extends ASTNode {
 		return this.body;
 	}
 	@Override
+	public int getChildCount() {
+		return body.size();
+	}
+	@Override
+	public ASTNode getChild(int index) {
+		return body.get(index);
+	}
+	@Override
 	public ASTNode addChild(ASTNode child) {
 	    	body.add(child);
 	    	return this;
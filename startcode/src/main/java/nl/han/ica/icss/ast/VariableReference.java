@@ -5,6 +5,10 @@ import java.util.Objects;
 public class VariableReference extends Expression {
 
 	public String name;
+
+	//Scope depth and slot of the assignment this refers to, set by VariableResolver; -1 if unresolved
+	public int depth = -1;
+	public int slot = -1;
 	
 	public VariableReference(String name) {
 		super();
@@ -0,0 +1,316 @@
+package nl.han.ica.icss.cache;
+
+import nl.han.ica.icss.Pipeline;
+
+import java.io.*;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Content-addressed cache of compile results on local disk.
+ *
+ * Entries are keyed by the SHA-256 of the compiler version and the source text, and
+ * hold the generated CSS or the errors. The default compiler version includes a hash of
+ * the compiler's classes, so a rebuilt compiler never sees the results of an old one.
+ * The cache can be shared by several processes: entries are written to a temporary
+ * file and atomically renamed into place, and eviction runs under a file lock. The
+ * last-modified time of an entry is its last use; when the total size exceeds the cap,
+ * the least recently used entries are removed until it is below EVICT_TO_PERCENT of it.
+ *
+ * Every instance estimates the total size from its own writes. To see the writes of
+ * other processes, it measures the directory again every RESCAN_WRITES writes, so the
+ * cap can be passed by at most what the others wrote since.
+ */
+public class CompileCache {
+
+    private static final String ENTRY_EXTENSION = ".entry";
+    private static final String LOCK_FILE = ".lock";
+
+    //Bump when generated output changes without a change in the project version
+    private static final String FORMAT_VERSION = "1";
+
+    //Eviction goes below the cap, so that not every following miss has to scan again
+    private static final int EVICT_TO_PERCENT = 90;
+
+    //Writes after which the size is measured again, to include those of other processes
+    static final int RESCAN_WRITES = 64;
+
+    //A file lock is held by the whole JVM, so threads must not request the lock of the
+    //same directory at the same time. Keyed by absolute path, shared by all instances.
+    private static final ConcurrentHashMap<Path, ReentrantLock> evictionLocks = new ConcurrentHashMap<>();
+
+    private final Path directory;
+    private final long maxBytes;
+    private final String compilerVersion;
+    private final ReentrantLock evictionLock;
+
+    //Estimate of the cache size, corrected by a full scan when it passes maxBytes and
+    //every RESCAN_WRITES writes
+    private final AtomicLong approximateBytes = new AtomicLong();
+    private final AtomicLong writes = new AtomicLong();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    public CompileCache(Path directory, long maxBytes) throws IOException {
+        this(directory, maxBytes, defaultCompilerVersion());
+    }
+
+    public CompileCache(Path directory, long maxBytes, String compilerVersion) throws IOException {
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+        this.compilerVersion = compilerVersion;
+        Files.createDirectories(directory);
+        this.evictionLock = evictionLocks.computeIfAbsent(directory.toAbsolutePath().normalize(),
+                path -> new ReentrantLock());
+        approximateBytes.set(scan().stream().mapToLong(e -> e.size).sum());
+    }
+
+    static String defaultCompilerVersion() {
+        String version = Pipeline.class.getPackage().getImplementationVersion();
+        return (version == null ? "dev" : version) + "/" + FORMAT_VERSION + "/" + ClassesHash.VALUE;
+    }
+
+    /*
+     SHA-256 of the jar or class files the compiler was loaded from, worked out once. If
+     they cannot be read, a random value, so entries are then only shared within one run.
+     */
+    private static class ClassesHash {
+        static final String VALUE = compute();
+
+        private static String compute() {
+            try {
+                MessageDigest digest = MessageDigest.getInstance("SHA-256");
+                Path location = Paths.get(Pipeline.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+                if (Files.isDirectory(location)) {
+                    List<Path> classes;
+                    try (Stream<Path> paths = Files.walk(location)) {
+                        classes = paths.filter(path -> path.toString().endsWith(".class")).sorted()
+                                .collect(Collectors.toList());
+                    }
+                    for (Path path : classes) {
+                        digest.update(location.relativize(path).toString().getBytes(StandardCharsets.UTF_8));
+                        digest.update(Files.readAllBytes(path));
+                    }
+                } else {
+                    digest.update(Files.readAllBytes(location));
+                }
+                return toHex(digest.digest()).substring(0, 16);
+            } catch (Exception e) {
+                return UUID.randomUUID().toString();
+            }
+        }
+    }
+
+    /**
+     * Returns the cached result for source, or compiles it with the pipeline and stores it.
+     */
+    public Entry compile(String source) {
+        String key = keyFor(source);
+        Path file = directory.resolve(key + ENTRY_EXTENSION);
+
+        Entry cached = read(file);
+        if (cached != null) {
+            hits.incrementAndGet();
+            return cached;
+        }
+        misses.incrementAndGet();
+
+        Entry entry = Entry.compile(source);
+        try {
+            write(file, entry);
+        } catch (IOException e) {
+            //The cache is only an optimisation: a failed write is not a failed compile
+        }
+        return entry;
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+    public long getMisses() {
+        return misses.get();
+    }
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    String keyFor(String source) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(compilerVersion.getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            digest.update(source.getBytes(StandardCharsets.UTF_8));
+            return toHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            //Every Java platform is required to support SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder();
+        for (byte b : bytes) {
+            hex.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+        }
+        return hex.toString();
+    }
+
+    private Entry read(Path file) {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            Entry entry = Entry.readFrom(in);
+            //Mark as recently used for LRU eviction
+            Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+            return entry;
+        } catch (IOException e) {
+            //Missing, evicted by another process meanwhile, or damaged: treat as a miss
+            return null;
+        }
+    }
+
+    private void write(Path file, Entry entry) throws IOException {
+        Path temp = Files.createTempFile(directory, "tmp", ".part");
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+                entry.writeTo(out);
+            }
+            long size = Files.size(temp);
+            Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            if (approximateBytes.addAndGet(size) > maxBytes || writes.incrementAndGet() % RESCAN_WRITES == 0) {
+                evict();
+            }
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    //Measures the size of the cache, and removes entries if it is over the cap
+    private void evict() throws IOException {
+        //Another thread is already evicting, which brings the size down for this one too
+        if (!evictionLock.tryLock()) {
+            return;
+        }
+        try (FileChannel lockChannel = FileChannel.open(directory.resolve(LOCK_FILE),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            FileLock lock = lockChannel.lock();
+            try {
+                List<CachedFile> files = scan();
+                long total = files.stream().mapToLong(e -> e.size).sum();
+                if (total > maxBytes) {
+                    long target = maxBytes / 100 * EVICT_TO_PERCENT + maxBytes % 100 * EVICT_TO_PERCENT / 100;
+                    files.sort(Comparator.comparing((CachedFile e) -> e.lastUsed));
+                    for (CachedFile file : files) {
+                        if (total <= target) {
+                            break;
+                        }
+                        if (Files.deleteIfExists(file.path)) {
+                            evictions.incrementAndGet();
+                        }
+                        total -= file.size;
+                    }
+                }
+                approximateBytes.set(total);
+            } finally {
+                lock.release();
+            }
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    private List<CachedFile> scan() throws IOException {
+        List<CachedFile> files = new ArrayList<>();
+        try (Stream<Path> paths = Files.list(directory)) {
+            for (Path path : (Iterable<Path>) paths::iterator) {
+                if (!path.getFileName().toString().endsWith(ENTRY_EXTENSION)) {
+                    continue;
+                }
+                try {
+                    BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+                    files.add(new CachedFile(path, attributes.size(), attributes.lastModifiedTime()));
+                } catch (NoSuchFileException e) {
+                    //Removed by another process
+                }
+            }
+        }
+        return files;
+    }
+
+    private static class CachedFile {
+        final Path path;
+        final long size;
+        final FileTime lastUsed;
+
+        CachedFile(Path path, long size, FileTime lastUsed) {
+            this.path = path;
+            this.size = size;
+            this.lastUsed = lastUsed;
+        }
+    }
+
+    /**
+     * A compile result: either the generated CSS, or the errors that stopped the compile.
+     */
+    public static class Entry {
+        public final List<String> errors;
+        public final String css;
+
+        public Entry(List<String> errors, String css) {
+            this.errors = Collections.unmodifiableList(errors);
+            this.css = css;
+        }
+
+        public boolean isSuccess() {
+            return errors.isEmpty();
+        }
+
+        static Entry compile(String source) {
+            Pipeline pipeline = new Pipeline();
+            pipeline.parseString(source);
+            String css = null;
+            if (pipeline.isParsed() && pipeline.check()) {
+                pipeline.transform();
+                css = pipeline.generate();
+            }
+            return new Entry(new ArrayList<>(pipeline.getErrors()), css);
+        }
+
+        void writeTo(DataOutputStream out) throws IOException {
+            out.writeInt(errors.size());
+            for (String error : errors) {
+                out.writeUTF(error);
+            }
+            out.writeBoolean(css != null);
+            if (css != null) {
+                out.write(css.getBytes(StandardCharsets.UTF_8));
+            }
+        }
+
+        static Entry readFrom(DataInputStream in) throws IOException {
+            int count = in.readInt();
+            List<String> errors = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                errors.add(in.readUTF());
+            }
+            String css = in.readBoolean() ? new String(in.readAllBytes(), StandardCharsets.UTF_8) : null;
+            return new Entry(errors, css);
+        }
+    }
+}
@@ -6,49 +6,240 @@ import nl.han.ica.icss.ast.operations.AddOperation;
 import nl.han.ica.icss.ast.operations.MultiplyOperation;
 import nl.han.ica.icss.ast.operations.SubtractOperation;
 import nl.han.ica.icss.ast.types.ExpressionType;
+import nl.han.ica.icss.diagnostics.Diagnostic;
+import nl.han.ica.icss.diagnostics.Diagnostics;
+import nl.han.ica.icss.diagnostics.ErrorCode;
+import nl.han.ica.icss.metrics.RuleProfiler;
+import nl.han.ica.icss.metrics.Stage;
+import nl.han.ica.icss.metrics.StageTimer;
+import nl.han.ica.icss.transforms.VariableResolver;
 
-import java.util.HashMap;
-import java.util.LinkedList;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
+/**
+ * Sets semantic errors on the nodes of an AST, and adds them to its Diagnostics in tree
+ * order, a node before its children, as AST.getErrors lists them. The errors of a
+ * top-level statement are added once it is checked; in fail-fast mode the check stops
+ * after the statement that fills the Diagnostics.
+ *
+ * Given a ForkJoinPool, the style rules are checked in parallel: a rule only reads the
+ * global scope and its own nested scopes. All global assignments are checked first,
+ * which is possible because every reference is bound to one assignment slot, after
+ * which the global types are only read. The errors end up on the same nodes as in a
+ * sequential check. The diagnostics of every top-level statement are collected apart
+ * and joined in statement order, so they are listed, and capped, in the same order too.
+ */
 public class Checker {
 
-    private LinkedList<HashMap<String, ExpressionType>> variableTypes;
+    //Rules per task below which the rules are checked without further splitting
+    private static final int RULES_PER_TASK = 128;
+
+    private final ForkJoinPool pool;
+    private RuleProfiler profiler;
+    private Diagnostics diagnostics = new Diagnostics();
+    private LineTable lines;
+    //Errors of the top-level statement being checked, added in tree order by report
+    private final Set<Diagnostic> pending = Collections.newSetFromMap(new IdentityHashMap<>());
+
+    //Variable types per scope depth, indexed by the slots assigned by VariableResolver.
+    //Scopes at the same depth never overlap, so their arrays are reused.
+    private ExpressionType[][] variableTypes;
+    private int depth;
+
+    public Checker() {
+        this(null);
+    }
+
+    /**
+     * @param pool pool to check the style rules on, or null to check sequentially
+     */
+    public Checker(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * @param profiler profiler to record the cost of every rule, if clause and variable
+     *                 assignment in, or null to not profile
+     */
+    public void setProfiler(RuleProfiler profiler) {
+        this.profiler = profiler;
+    }
+
+    /**
+     * @param diagnostics where the errors found are added to
+     */
+    public void setDiagnostics(Diagnostics diagnostics) {
+        this.diagnostics = diagnostics;
+    }
+    public Diagnostics getDiagnostics() {
+        return diagnostics;
+    }
 
     public void check(AST ast) {
-        variableTypes = new LinkedList<>();
-        variableTypes.push(new HashMap<>());
-        checkStylesheet(ast.root);
-        variableTypes.pop();
+        lines = ast.lines;
+        if (profiler != null) {
+            profiler.prepare(ast);
+        }
+        int[] scopeSizes = VariableResolver.resolve(ast, true);
+        variableTypes = newScopes(scopeSizes, new ExpressionType[scopeSizes[0]]);
+        depth = 0;
+        if (pool == null) {
+            checkStylesheet(ast.root);
+        } else {
+            checkStylesheetParallel(ast.root, scopeSizes);
+        }
+    }
+
+    private static ExpressionType[][] newScopes(int[] scopeSizes, ExpressionType[] globalTypes) {
+        ExpressionType[][] scopes = new ExpressionType[scopeSizes.length][];
+        scopes[0] = globalTypes;
+        for (int i = 1; i < scopeSizes.length; i++) {
+            scopes[i] = new ExpressionType[scopeSizes[i]];
+        }
+        return scopes;
     }
 
     private void checkStylesheet(Stylesheet sheet) {
         for (ASTNode child : sheet.getChildren()) {
+            if (diagnostics.isStopped()) {
+                return;
+            }
             if (child instanceof VariableAssignment) {
                 checkVariableAssignment((VariableAssignment) child);
             } else if (child instanceof Stylerule) {
                 checkStylerule((Stylerule) child);
             }
+            report(child);
+        }
+    }
+
+    private void checkStylesheetParallel(Stylesheet sheet, int[] scopeSizes) {
+        List<ASTNode> statements = sheet.getChildren();
+        //Diagnostics per statement, null for those without errors
+        Diagnostics[] found = new Diagnostics[statements.size()];
+        List<Stylerule> rules = new ArrayList<>();
+        List<Integer> ruleStatements = new ArrayList<>();
+        Diagnostics all = diagnostics;
+        diagnostics = all.newEmpty();
+        for (int i = 0; i < statements.size(); i++) {
+            ASTNode child = statements.get(i);
+            if (child instanceof VariableAssignment) {
+                checkVariableAssignment((VariableAssignment) child);
+                report(child);
+                if (diagnostics.hasErrors()) {
+                    found[i] = diagnostics;
+                    diagnostics = all.newEmpty();
+                }
+            } else if (child instanceof Stylerule) {
+                rules.add((Stylerule) child);
+                ruleStatements.add(i);
+            }
+        }
+        diagnostics = all;
+        pool.invoke(new CheckRules(this, rules, ruleStatements, 0, rules.size(), scopeSizes, found));
+        for (Diagnostics statement : found) {
+            if (statement != null) {
+                diagnostics.addAll(statement);
+            }
+        }
+    }
+
+    /*
+     Checks a range of rules, splitting it while it is large so idle workers can steal
+     halves. Every leaf gets its own Checker with private nested scopes; the global types
+     are shared and no longer written. The diagnostics of a rule are stored in found, at
+     the index of its statement.
+     */
+    private static class CheckRules extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final Checker parent;
+        private final List<Stylerule> rules;
+        private final List<Integer> ruleStatements;
+        private final int from;
+        private final int to;
+        private final int[] scopeSizes;
+        private final Diagnostics[] found;
+
+        CheckRules(Checker parent, List<Stylerule> rules, List<Integer> ruleStatements, int from, int to,
+                   int[] scopeSizes, Diagnostics[] found) {
+            this.parent = parent;
+            this.rules = rules;
+            this.ruleStatements = ruleStatements;
+            this.from = from;
+            this.to = to;
+            this.scopeSizes = scopeSizes;
+            this.found = found;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= RULES_PER_TASK) {
+                Checker checker = new Checker();
+                checker.variableTypes = newScopes(scopeSizes, parent.variableTypes[0]);
+                checker.profiler = parent.profiler;
+                checker.lines = parent.lines;
+                //All errors of this range, only to stop once it alone fills the diagnostics
+                Diagnostics range = parent.diagnostics.newEmpty();
+                checker.diagnostics = range.newEmpty();
+                for (int i = from; i < to && !range.isStopped(); i++) {
+                    checker.checkStylerule(rules.get(i));
+                    checker.report(rules.get(i));
+                    if (checker.diagnostics.hasErrors()) {
+                        found[ruleStatements.get(i)] = checker.diagnostics;
+                        range.addAll(checker.diagnostics);
+                        checker.diagnostics = range.newEmpty();
+                    }
+                }
+            } else {
+                int middle = (from + to) >>> 1;
+                invokeAll(new CheckRules(parent, rules, ruleStatements, from, middle, scopeSizes, found),
+                        new CheckRules(parent, rules, ruleStatements, middle, to, scopeSizes, found));
+            }
         }
     }
 
     private void checkStylerule(Stylerule rule) {
+        if (profiler == null) {
+            checkNextScope(rule);
+            return;
+        }
+        StageTimer timer = profiler.begin(rule);
         checkNextScope(rule);
+        profiler.end(rule, Stage.CHECK, timer);
     }
 
     private void checkIfClause(IfClause ifClause) {
-        checkNextScope(ifClause);
-
+        if (profiler == null) {
+            checkIfClauseBody(ifClause);
+            return;
+        }
+        StageTimer timer = profiler.begin(ifClause);
+        checkIfClauseBody(ifClause);
+        profiler.end(ifClause, Stage.CHECK, timer);
+    }
 
+    private void checkIfClauseBody(IfClause ifClause) {
         ExpressionType expressionType = checkExpressionType(ifClause.conditionalExpression);
         if (expressionType != ExpressionType.BOOL) {
-            ifClause.setError("If condition must be of type BOOL. Found: " + expressionType);
+            error(ifClause, ErrorCode.IF_CONDITION_NOT_BOOL, expressionType);
         }
+
+        checkNextScope(ifClause);
     }
 
     private void checkNextScope(ASTNode node) {
-        variableTypes.push(new HashMap<>());
+        depth++;
 
-        for (ASTNode child : node.getChildren()) {
+        int count = node.getChildCount();
+        for (int i = 0; i < count; i++) {
+            ASTNode child = node.getChild(i);
             if (child instanceof VariableAssignment) {
                 checkVariableAssignment((VariableAssignment) child);
             } else if (child instanceof Declaration) {
@@ -58,24 +249,30 @@ public class Checker {
             }
         }
 
-        variableTypes.pop();
+        depth--;
     }
 
     private void checkVariableAssignment(VariableAssignment variableAssignment) {
-        String name = variableAssignment.name.name;
+        if (profiler == null) {
+            checkVariableAssignmentBody(variableAssignment);
+            return;
+        }
+        StageTimer timer = profiler.begin(variableAssignment);
+        checkVariableAssignmentBody(variableAssignment);
+        profiler.end(variableAssignment, Stage.CHECK, timer);
+    }
+
+    private void checkVariableAssignmentBody(VariableAssignment variableAssignment) {
         ExpressionType type = checkExpressionType(variableAssignment.expression);
-        variableTypes.peek().put(name, type);
+        variableTypes[depth][variableAssignment.slot] = type;
     }
 
 
-    private ExpressionType getVariableType(String name) {
-        for (HashMap<String, ExpressionType> scope : variableTypes) {
-            ExpressionType expressionType = scope.get(name);
-            if (expressionType != null) {
-                return expressionType; // found in current scope
-            }
+    private ExpressionType getVariableType(VariableReference reference) {
+        if (reference.slot < 0) {
+            return null;
         }
-        return null;
+        return variableTypes[reference.depth][reference.slot];
     }
 
     private ExpressionType checkExpressionType(ASTNode node) {
@@ -90,10 +287,10 @@ public class Checker {
         } else if (node instanceof ScalarLiteral){
             return ExpressionType.SCALAR;
         } else if (node instanceof VariableReference) {
-            String varName = ((VariableReference) node).name;
-            ExpressionType type = getVariableType(varName);
+            VariableReference reference = (VariableReference) node;
+            ExpressionType type = getVariableType(reference);
             if (type == null) {
-                node.setError("Variable '" + varName + "' is not defined in this scope");
+                error(node, ErrorCode.UNDEFINED_VARIABLE, reference.name);
             }
             return type;
         } else if (node instanceof Operation) {
@@ -109,19 +306,19 @@ public class Checker {
             case "width":
             case "height":
                 if (expressionType == ExpressionType.COLOR) {
-                    declaration.setError("Property '" + declaration.property.name + "': color not allowed");
+                    error(declaration, ErrorCode.COLOR_NOT_ALLOWED, declaration.property.name);
                 } else if (expressionType == ExpressionType.SCALAR) {
-                    declaration.setError("Property '" + declaration.property.name + "': SCALAR not allowed");
+                    error(declaration, ErrorCode.SCALAR_NOT_ALLOWED, declaration.property.name);
                 }
                 break;
             case "color":
             case "background-color":
                 if (expressionType != ExpressionType.COLOR) {
-                    declaration.setError("Property '" + declaration.property.name + "': only colors allowed");
+                    error(declaration, ErrorCode.ONLY_COLORS_ALLOWED, declaration.property.name);
                 }
                 break;
             default:
-                declaration.setError("Unknown property: " + declaration.property.name);
+                error(declaration, ErrorCode.UNKNOWN_PROPERTY, declaration.property.name);
                 break;
         }
     }
@@ -129,13 +326,13 @@ public class Checker {
     private ExpressionType checkOperationType(ASTNode node) {
         if (!(node instanceof Operation)) return null;
         // check amount of literals
-        if (node.getChildren().size() != 2) {
-            node.setError("Operation must have exactly two literals.");
+        if (node.getChildCount() != 2) {
+            error(node, ErrorCode.OPERAND_COUNT);
             return null;
         }
 
-        ASTNode leftNode = node.getChildren().get(0);
-        ASTNode rightNode = node.getChildren().get(1);
+        ASTNode leftNode = node.getChild(0);
+        ASTNode rightNode = node.getChild(1);
 
         ExpressionType leftType = checkExpressionType(leftNode);
         ExpressionType rightType = checkExpressionType(rightNode);
@@ -143,11 +340,10 @@ public class Checker {
         // check if types are valid
         if (node instanceof AddOperation || node instanceof SubtractOperation) {
             if (leftType != rightType) {
-                node.setError("Literals of + or - must be of the same type. Found: "
-                        + leftType + " and " + rightType);
+                error(node, ErrorCode.OPERAND_TYPES_DIFFER, leftType, rightType);
                 return null;
             } else if (leftType == ExpressionType.SCALAR || rightType == ExpressionType.SCALAR) {
-                node.setError("Literals of + or - cannot be SCALAR. Found: " + leftType);
+                error(node, ErrorCode.SCALAR_OPERAND, leftType);
                 return null;
             }
             return leftType;
@@ -167,11 +363,43 @@ public class Checker {
                 return ExpressionType.SCALAR;
             }
 
-            node.setError("One literal of * must be a scalar. Found: " + leftType + " * " + rightType);
+            error(node, ErrorCode.NO_SCALAR_OPERAND, leftType, rightType);
             return null;
         }
 
-        node.setError("Unknown operation type: " + node.getClass().getSimpleName());
+        error(node, ErrorCode.UNKNOWN_OPERATION, node.getClass().getSimpleName());
         return null;
     }
+
+    private void error(ASTNode node, ErrorCode code, Object... arguments) {
+        Diagnostic diagnostic = new Diagnostic(code, node, lines, arguments);
+        node.setError(diagnostic);
+        pending.add(diagnostic);
+    }
+
+    /*
+     Adds the errors found in a checked top-level statement to the diagnostics. A node is
+     checked after its children when its error depends on their types, so the order they
+     were found in is not the tree order; the statement is walked again instead, but only
+     when it has more than one error.
+     */
+    private void report(ASTNode statement) {
+        if (pending.size() == 1) {
+            diagnostics.add(pending.iterator().next());
+        } else if (!pending.isEmpty()) {
+            collectErrors(statement);
+        }
+        pending.clear();
+    }
+
+    private void collectErrors(ASTNode node) {
+        Diagnostic error = node.getDiagnostic();
+        if (error != null && pending.contains(error)) {
+            diagnostics.add(error);
+        }
+        int count = node.getChildCount();
+        for (int i = 0; i < count; i++) {
+            collectErrors(node.getChild(i));
+        }
+    }
 }
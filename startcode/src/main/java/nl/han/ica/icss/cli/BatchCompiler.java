@@ -0,0 +1,246 @@
+package nl.han.ica.icss.cli;
+
+import nl.han.ica.icss.Pipeline;
+import nl.han.ica.icss.cache.CompileCache;
+import nl.han.ica.icss.metrics.RuleProfiler;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Headless entry point that compiles every .icss file below a directory and writes
+ * the generated .css file next to its source.
+ *
+ * Files are compiled on a fork-join pool, each with its own Pipeline. Results are
+ * reported in sorted path order, so the output does not depend on the thread count.
+ * A file that fails, also by an exception in the compiler, is reported as failed
+ * without stopping the others, and its .css file from an earlier compile is removed.
+ * With --profile, the most expensive style rules, if clauses and assignments of all
+ * files are listed after the results. Compiles through the cache are not profiled.
+ */
+public class BatchCompiler {
+
+    private static final String SOURCE_EXTENSION = ".icss";
+    private static final String TARGET_EXTENSION = ".css";
+    private static final long DEFAULT_CACHE_MEGABYTES = 256;
+
+    private final int parallelism;
+    private long wallTimeNanos;
+
+    private final CompileCache cache;
+    private RuleProfiler profiler;
+
+    public BatchCompiler(int parallelism) {
+        this(parallelism, null);
+    }
+
+    public BatchCompiler(int parallelism, CompileCache cache) {
+        this.parallelism = parallelism;
+        this.cache = cache;
+    }
+
+    public static void main(String[] args) throws IOException {
+        List<String> positional = new ArrayList<>();
+        Path cacheDir = null;
+        long cacheMegabytes = DEFAULT_CACHE_MEGABYTES;
+        int profileTop = 0;
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--cache") && i + 1 < args.length) {
+                cacheDir = Paths.get(args[++i]);
+            } else if (args[i].equals("--cache-size") && i + 1 < args.length) {
+                cacheMegabytes = Long.parseLong(args[++i]);
+            } else if (args[i].equals("--profile") && i + 1 < args.length) {
+                profileTop = Integer.parseInt(args[++i]);
+            } else {
+                positional.add(args[i]);
+            }
+        }
+        if (positional.size() < 1 || positional.size() > 2) {
+            System.err.println("Usage: BatchCompiler [--cache <dir>] [--cache-size <MB>] [--profile <n>] <source-dir> [threads]");
+            System.exit(2);
+        }
+        int parallelism = positional.size() == 2
+                ? Integer.parseInt(positional.get(1))
+                : Runtime.getRuntime().availableProcessors();
+        CompileCache cache = cacheDir == null ? null : new CompileCache(cacheDir, cacheMegabytes * 1024 * 1024);
+
+        BatchCompiler compiler = new BatchCompiler(parallelism, cache);
+        if (profileTop > 0) {
+            compiler.setProfiler(new RuleProfiler());
+        }
+        List<Result> results = compiler.compileTree(Paths.get(positional.get(0)));
+        boolean success = compiler.report(results);
+        if (compiler.getProfiler() != null) {
+            System.out.print(compiler.getProfiler().report(profileTop));
+        }
+        System.exit(success ? 0 : 1);
+    }
+
+    /**
+     * @param profiler profiler to record the cost of every rule, if clause and variable
+     *                 assignment of the compiled files in, or null to not profile
+     */
+    public void setProfiler(RuleProfiler profiler) {
+        this.profiler = profiler;
+    }
+    public RuleProfiler getProfiler() {
+        return profiler;
+    }
+
+    /**
+     * Compiles all .icss files below root. The returned list is in sorted path order.
+     */
+    public List<Result> compileTree(Path root) throws IOException {
+        List<Path> sources = findSources(root);
+
+        long start = System.nanoTime();
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        List<Result> results;
+        try {
+            results = pool.submit(() -> sources.parallelStream()
+                    .map(this::compileFile)
+                    .collect(Collectors.toList())).join();
+        } finally {
+            pool.shutdown();
+        }
+        wallTimeNanos = System.nanoTime() - start;
+        return results;
+    }
+
+    public long getWallTimeNanos() {
+        return wallTimeNanos;
+    }
+
+    static List<Path> findSources(Path root) throws IOException {
+        try (Stream<Path> paths = Files.walk(root)) {
+            return paths
+                    .filter(Files::isRegularFile)
+                    .filter(p -> p.getFileName().toString().endsWith(SOURCE_EXTENSION))
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+    }
+
+    static Path targetFor(Path source) {
+        String name = source.getFileName().toString();
+        String base = name.substring(0, name.length() - SOURCE_EXTENSION.length());
+        return source.resolveSibling(base + TARGET_EXTENSION);
+    }
+
+    Result compileFile(Path source) {
+        return cache == null ? compileUncached(source) : compileCached(source);
+    }
+
+    private Result compileCached(Path source) {
+        List<String> errors = new ArrayList<>();
+        try {
+            CompileCache.Entry entry = cache.compile(Files.readString(source, StandardCharsets.UTF_8));
+            if (entry.isSuccess()) {
+                Files.writeString(targetFor(source), entry.css, StandardCharsets.UTF_8);
+            }
+            errors.addAll(entry.errors);
+        } catch (IOException | RuntimeException e) {
+            errors.add(e.toString());
+        }
+        return finish(source, errors);
+    }
+
+    private Result compileUncached(Path source) {
+        try {
+            return compileSource(source, Files.readString(source, StandardCharsets.UTF_8), profiler);
+        } catch (IOException e) {
+            List<String> errors = new ArrayList<>();
+            errors.add(e.toString());
+            return finish(source, errors);
+        }
+    }
+
+    /*
+     Compiles input, the text of source, and writes the generated CSS to its target file.
+     */
+    static Result compileSource(Path source, String input) {
+        return compileSource(source, input, null);
+    }
+
+    static Result compileSource(Path source, String input, RuleProfiler profiler) {
+        List<String> errors = new ArrayList<>();
+        try {
+            Pipeline pipeline = new Pipeline();
+            pipeline.setProfiler(profiler);
+            pipeline.parseString(input);
+            if (pipeline.isParsed() && pipeline.check()) {
+                pipeline.transform();
+                try (FileChannel out = FileChannel.open(targetFor(source),
+                        StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                    pipeline.generate(out);
+                }
+            }
+            errors.addAll(pipeline.getErrors());
+        } catch (IOException | RuntimeException e) {
+            //A bug hit by one file fails that file, not the whole batch
+            errors.add(e.toString());
+        }
+        return finish(source, errors);
+    }
+
+    private static Result finish(Path source, List<String> errors) {
+        if (!errors.isEmpty()) {
+            //The CSS of an earlier compile would pass for the output of this one
+            try {
+                Files.deleteIfExists(targetFor(source));
+            } catch (IOException e) {
+                errors.add(e.toString());
+            }
+        }
+        return new Result(source, errors);
+    }
+
+    /**
+     * Prints the errors of every failed file followed by a throughput summary.
+     * @return true when all files compiled without errors
+     */
+    public boolean report(List<Result> results) {
+        int failed = 0;
+        for (Result result : results) {
+            if (!result.isSuccess()) {
+                failed++;
+                for (String error : result.errors) {
+                    System.err.println(result.source + ": " + error);
+                }
+            }
+        }
+        double seconds = wallTimeNanos / 1e9;
+        double filesPerSecond = seconds > 0 ? results.size() / seconds : 0;
+        System.out.printf("Compiled %d files (%d failed) on %d threads in %.3f s (%.1f files/s)%n",
+                results.size(), failed, parallelism, seconds, filesPerSecond);
+        if (cache != null) {
+            System.out.printf("Cache: %d hits, %d misses, %d evictions%n",
+                    cache.getHits(), cache.getMisses(), cache.getEvictions());
+        }
+        return failed == 0;
+    }
+
+    public static class Result {
+        public final Path source;
+        public final List<String> errors;
+
+        public Result(Path source, List<String> errors) {
+            this.source = source;
+            this.errors = errors;
+        }
+
+        public boolean isSuccess() {
+            return errors.isEmpty();
+        }
+    }
+}
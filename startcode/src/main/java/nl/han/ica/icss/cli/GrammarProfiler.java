@@ -0,0 +1,75 @@
+package nl.han.ica.icss.cli;
+
+import nl.han.ica.icss.Pipeline;
+import nl.han.ica.icss.parser.DecisionProfile;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Entry point that parses a corpus of .icss files with decision profiling on, and
+ * prints which decisions of the grammar the parser spends its prediction time in.
+ *
+ * Files are parsed one after the other on a single thread, so the times are not
+ * disturbed by other parses. The prediction caches of the parser are shared between
+ * files, as in a long-running compiler, so run enough input for them to warm up.
+ */
+public class GrammarProfiler {
+
+    private static final int DEFAULT_TOP = 20;
+
+    private final DecisionProfile profile = new DecisionProfile();
+    private int files;
+    private int failed;
+
+    public static void main(String[] args) throws IOException {
+        int top = DEFAULT_TOP;
+        List<Path> roots = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--top") && i + 1 < args.length) {
+                top = Integer.parseInt(args[++i]);
+            } else {
+                roots.add(Paths.get(args[i]));
+            }
+        }
+        if (roots.isEmpty()) {
+            System.err.println("Usage: GrammarProfiler [--top <n>] <file-or-dir>...");
+            System.exit(2);
+        }
+
+        GrammarProfiler profiler = new GrammarProfiler();
+        for (Path root : roots) {
+            profiler.profileTree(root);
+        }
+        System.out.printf("Parsed %d files (%d with syntax errors)%n", profiler.files, profiler.failed);
+        System.out.print(profiler.getProfile().report(top));
+    }
+
+    /**
+     * Parses root, or all .icss files below it when it is a directory.
+     */
+    public void profileTree(Path root) throws IOException {
+        List<Path> sources = Files.isDirectory(root) ? BatchCompiler.findSources(root) : List.of(root);
+        for (Path source : sources) {
+            profileFile(source);
+        }
+    }
+
+    public void profileFile(Path source) throws IOException {
+        Pipeline pipeline = new Pipeline();
+        pipeline.setDecisionProfile(profile);
+        pipeline.parseFile(source);
+        files++;
+        if (!pipeline.isParsed()) {
+            failed++;
+        }
+    }
+
+    public DecisionProfile getProfile() {
+        return profile;
+    }
+}
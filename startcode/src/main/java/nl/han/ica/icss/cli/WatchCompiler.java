@@ -0,0 +1,184 @@
+package nl.han.ica.icss.cli;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static java.nio.file.StandardWatchEventKinds.*;
+
+/**
+ * Long-running entry point that recompiles .icss files below a directory when they change.
+ *
+ * Events are collected until none arrived for the debounce time, so the burst of events
+ * an editor produces for one save leads to one compile. Only files with changed content
+ * are compiled again; the source text and result of every file are kept in memory. For
+ * each compile the time from the first event to the written CSS is reported.
+ */
+public class WatchCompiler implements Closeable {
+
+    private static final String SOURCE_EXTENSION = ".icss";
+    private static final long DEFAULT_DEBOUNCE_MILLIS = 15;
+
+    private final Path root;
+    private final long debounceMillis;
+    private final WatchService watchService;
+    private final Map<WatchKey, Path> directories = new HashMap<>();
+
+    //Last compiled text and result per source file
+    private final Map<Path, String> sources = new HashMap<>();
+    private final Map<Path, BatchCompiler.Result> results = new HashMap<>();
+
+    private long compiles;
+    private long maxLatencyNanos;
+
+    public WatchCompiler(Path root, long debounceMillis) throws IOException {
+        this.root = root;
+        this.debounceMillis = debounceMillis;
+        this.watchService = root.getFileSystem().newWatchService();
+    }
+
+    public static void main(String[] args) throws IOException {
+        long debounceMillis = DEFAULT_DEBOUNCE_MILLIS;
+        Path root = null;
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--debounce") && i + 1 < args.length) {
+                debounceMillis = Long.parseLong(args[++i]);
+            } else if (root == null) {
+                root = Paths.get(args[i]);
+            } else {
+                root = null;
+                break;
+            }
+        }
+        if (root == null) {
+            System.err.println("Usage: WatchCompiler [--debounce <ms>] <source-dir>");
+            System.exit(2);
+        }
+
+        try (WatchCompiler compiler = new WatchCompiler(root, debounceMillis)) {
+            compiler.run();
+        }
+    }
+
+    /**
+     * Compiles all files once and then recompiles changes until the compiler is closed.
+     */
+    public void run() throws IOException {
+        registerTree(root);
+        for (Path source : BatchCompiler.findSources(root)) {
+            compile(source, System.nanoTime());
+        }
+        System.out.printf("Watching %s (%d files)%n", root, sources.size());
+
+        try {
+            while (true) {
+                //Wait for the first event of a burst, then until the burst is over
+                Map<Path, Long> changed = new LinkedHashMap<>();
+                collectEvents(watchService.take(), changed);
+                WatchKey key;
+                while ((key = watchService.poll(debounceMillis, TimeUnit.MILLISECONDS)) != null) {
+                    collectEvents(key, changed);
+                }
+                for (Map.Entry<Path, Long> change : changed.entrySet()) {
+                    compile(change.getKey(), change.getValue());
+                }
+            }
+        } catch (ClosedWatchServiceException e) {
+            //Closed: stop watching
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        watchService.close();
+    }
+
+    public synchronized BatchCompiler.Result getResult(Path source) {
+        return results.get(source);
+    }
+    public synchronized long getCompiles() {
+        return compiles;
+    }
+    public synchronized long getMaxLatencyNanos() {
+        return maxLatencyNanos;
+    }
+
+    private void registerTree(Path start) throws IOException {
+        Files.walkFileTree(start, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                directories.put(dir.register(watchService, ENTRY_CREATE, ENTRY_MODIFY, ENTRY_DELETE), dir);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    //Adds the changed source files of key to changed, keeping the time each was first seen
+    private void collectEvents(WatchKey key, Map<Path, Long> changed) throws IOException {
+        long now = System.nanoTime();
+        Path dir = directories.get(key);
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (dir == null || event.kind() == OVERFLOW) {
+                //Events were lost: look at every file again
+                for (Path source : BatchCompiler.findSources(root)) {
+                    changed.putIfAbsent(source, now);
+                }
+                continue;
+            }
+            Path path = dir.resolve((Path) event.context());
+            if (event.kind() == ENTRY_CREATE && Files.isDirectory(path)) {
+                registerTree(path);
+                for (Path source : BatchCompiler.findSources(path)) {
+                    changed.putIfAbsent(source, now);
+                }
+            } else if (path.getFileName().toString().endsWith(SOURCE_EXTENSION)) {
+                changed.putIfAbsent(path, now);
+            }
+        }
+        if (!key.reset()) {
+            directories.remove(key);
+        }
+    }
+
+    private void compile(Path source, long firstEventNanos) {
+        String input;
+        try {
+            input = Files.readString(source, StandardCharsets.UTF_8);
+        } catch (NoSuchFileException e) {
+            synchronized (this) {
+                sources.remove(source);
+                results.remove(source);
+            }
+            return;
+        } catch (IOException e) {
+            //Most likely still being written; the next event brings it back
+            return;
+        }
+        if (input.equals(sources.get(source))) {
+            return;
+        }
+
+        BatchCompiler.Result result = BatchCompiler.compileSource(source, input);
+        long latencyNanos = System.nanoTime() - firstEventNanos;
+        synchronized (this) {
+            sources.put(source, input);
+            results.put(source, result);
+            compiles++;
+            maxLatencyNanos = Math.max(maxLatencyNanos, latencyNanos);
+        }
+
+        System.out.printf("%s %s in %.1f ms%n", result.isSuccess() ? "Compiled" : "Failed",
+                root.relativize(source), latencyNanos / 1e6);
+        for (String error : result.errors) {
+            System.err.println(source + ": " + error);
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package nl.han.ica.icss.diagnostics;
+
+import nl.han.ica.icss.ast.ASTNode;
+import nl.han.ica.icss.ast.LineTable;
+
+/**
+ * One error: its code, the node or source position it belongs to, and the values its
+ * message is made of. The message, and the line and column of a node, are only worked
+ * out when they are asked for, so finding many errors costs little more than counting
+ * them.
+ */
+public class Diagnostic {
+
+    public final ErrorCode code;
+    //The node with the error, or null for errors found while parsing
+    public final ASTNode node;
+    //Lines of the source of node, or null when unknown
+    private final LineTable lines;
+    //Position of a parse error, or 0 when unknown
+    private final int line;
+    private final int column;
+    private final Object[] arguments;
+    private String message;
+
+    public Diagnostic(ErrorCode code, ASTNode node, Object... arguments) {
+        this(code, node, null, arguments);
+    }
+
+    public Diagnostic(ErrorCode code, ASTNode node, LineTable lines, Object... arguments) {
+        this(code, node, lines, 0, 0, arguments);
+    }
+
+    public Diagnostic(ErrorCode code, int line, int column, Object... arguments) {
+        this(code, null, null, line, column, arguments);
+    }
+
+    private Diagnostic(ErrorCode code, ASTNode node, LineTable lines, int line, int column, Object[] arguments) {
+        this.code = code;
+        this.node = node;
+        this.lines = lines;
+        this.line = line;
+        this.column = column;
+        this.arguments = arguments;
+    }
+
+    /**
+     * @return the line the error starts on, counting from 1, or 0 when unknown
+     */
+    public int getLine() {
+        return hasNodePosition() ? lines.getLine(node.getStartOffset()) : line;
+    }
+
+    /**
+     * @return the column the error starts at, counting from 0
+     */
+    public int getColumn() {
+        return hasNodePosition() ? lines.getColumn(node.getStartOffset()) : column;
+    }
+
+    private boolean hasNodePosition() {
+        return node != null && lines != null && node.hasPosition();
+    }
+
+    public String getMessage() {
+        if (message == null) {
+            message = code.format(arguments);
+        }
+        return message;
+    }
+
+    @Override
+    public String toString() {
+        return code.isSemantic() ? "ERROR: " + getMessage() : getMessage();
+    }
+}
@@ -0,0 +1,118 @@
+package nl.han.ica.icss.diagnostics;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The errors of one compile, in the order they were found.
+ *
+ * At most maxErrors are kept; errors beyond that are only counted. In fail-fast mode a
+ * stage stops as soon as the cap is reached, see isStopped. Not thread-safe: parallel
+ * stages collect into a Diagnostics of their own per task and add those in order.
+ */
+public class Diagnostics {
+
+    public static final int UNLIMITED = Integer.MAX_VALUE;
+
+    private final List<Diagnostic> diagnostics = new ArrayList<>();
+    private int maxErrors;
+    private boolean failFast;
+    private long found;
+
+    public Diagnostics() {
+        this(UNLIMITED, false);
+    }
+
+    public Diagnostics(int maxErrors, boolean failFast) {
+        this.maxErrors = maxErrors;
+        this.failFast = failFast;
+    }
+
+    /**
+     * @return an empty Diagnostics with the same settings and the capacity this one has left
+     */
+    public Diagnostics newEmpty() {
+        return new Diagnostics(maxErrors - diagnostics.size(), failFast);
+    }
+
+    /**
+     * Keeps diagnostic, unless the cap was reached.
+     * @return true if it was kept
+     */
+    public boolean add(Diagnostic diagnostic) {
+        found++;
+        if (diagnostics.size() >= maxErrors) {
+            return false;
+        }
+        diagnostics.add(diagnostic);
+        return true;
+    }
+
+    /**
+     * Adds the diagnostics of other after those of this one.
+     */
+    public void addAll(Diagnostics other) {
+        for (Diagnostic diagnostic : other.diagnostics) {
+            add(diagnostic);
+        }
+        found += other.found - other.diagnostics.size();
+    }
+
+    /**
+     * @return true when the stage reporting into this should stop
+     */
+    public boolean isStopped() {
+        return failFast && diagnostics.size() >= maxErrors;
+    }
+
+    public boolean hasErrors() {
+        return found > 0;
+    }
+
+    /**
+     * @return the number of errors found, including those beyond the cap
+     */
+    public long getFound() {
+        return found;
+    }
+
+    public List<Diagnostic> getAll() {
+        return Collections.unmodifiableList(diagnostics);
+    }
+
+    /**
+     * @return the kept diagnostics as messages, formatted when read
+     */
+    public List<String> getMessages() {
+        return new AbstractList<>() {
+            @Override
+            public String get(int index) {
+                return diagnostics.get(index).toString();
+            }
+            @Override
+            public int size() {
+                return diagnostics.size();
+            }
+        };
+    }
+
+    public void clear() {
+        diagnostics.clear();
+        found = 0;
+    }
+
+    public int getMaxErrors() {
+        return maxErrors;
+    }
+    public void setMaxErrors(int maxErrors) {
+        this.maxErrors = maxErrors;
+    }
+    public boolean isFailFast() {
+        return failFast;
+    }
+    public void setFailFast(boolean failFast) {
+        this.failFast = failFast;
+    }
+}
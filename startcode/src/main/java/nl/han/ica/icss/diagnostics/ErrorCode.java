@@ -0,0 +1,47 @@
+package nl.han.ica.icss.diagnostics;
+
+/**
+ * Kinds of errors the pipeline reports, with the pattern their message is formatted
+ * from. Semantic errors are listed with an "ERROR: " prefix, like a SemanticError.
+ */
+public enum ErrorCode {
+    //Parsing
+    NOT_ASCII("Input is not ASCII: byte %d at offset %d", false),
+    SYNTAX("Syntax error: %s", false),
+    SYNTAX_ABORTED("Syntax error", false),
+    PARSE_FAILED("%s", false),
+
+    //Checking
+    SEMANTIC("%s", true),
+    UNDEFINED_VARIABLE("Variable '%s' is not defined in this scope", true),
+    IF_CONDITION_NOT_BOOL("If condition must be of type BOOL. Found: %s", true),
+    COLOR_NOT_ALLOWED("Property '%s': color not allowed", true),
+    SCALAR_NOT_ALLOWED("Property '%s': SCALAR not allowed", true),
+    ONLY_COLORS_ALLOWED("Property '%s': only colors allowed", true),
+    UNKNOWN_PROPERTY("Unknown property: %s", true),
+    OPERAND_COUNT("Operation must have exactly two literals.", true),
+    OPERAND_TYPES_DIFFER("Literals of + or - must be of the same type. Found: %s and %s", true),
+    SCALAR_OPERAND("Literals of + or - cannot be SCALAR. Found: %s", true),
+    NO_SCALAR_OPERAND("One literal of * must be a scalar. Found: %s * %s", true),
+    UNKNOWN_OPERATION("Unknown operation type: %s", true),
+
+    //Variable overrides
+    UNKNOWN_GLOBAL("Variable '%s' is not assigned at the top level", true),
+    GLOBAL_TYPE("Variable '%s' is of type %s, not %s", true);
+
+    private final String pattern;
+    private final boolean semantic;
+
+    ErrorCode(String pattern, boolean semantic) {
+        this.pattern = pattern;
+        this.semantic = semantic;
+    }
+
+    public boolean isSemantic() {
+        return semantic;
+    }
+
+    String format(Object[] arguments) {
+        return arguments.length == 0 ? pattern : String.format(pattern, arguments);
+    }
+}
@@ -0,0 +1,72 @@
+package nl.han.ica.icss.generator;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Appendable that encodes characters as single bytes into a fixed size buffer and writes
+ * the buffer to a channel whenever it is full. Generated CSS is plain ASCII, so no
+ * charset encoder (and no intermediate byte arrays) are needed.
+ */
+public class ChannelAppendable implements Appendable, Flushable, Closeable {
+
+    public static final int DEFAULT_BUFFER_SIZE = 8192;
+
+    private final WritableByteChannel channel;
+    private final ByteBuffer buffer;
+
+    public ChannelAppendable(WritableByteChannel channel) {
+        this(channel, DEFAULT_BUFFER_SIZE);
+    }
+
+    public ChannelAppendable(WritableByteChannel channel, int bufferSize) {
+        this.channel = channel;
+        this.buffer = ByteBuffer.allocate(bufferSize);
+    }
+
+    @Override
+    public Appendable append(CharSequence csq) throws IOException {
+        CharSequence text = csq == null ? "null" : csq;
+        return append(text, 0, text.length());
+    }
+
+    @Override
+    public Appendable append(CharSequence csq, int start, int end) throws IOException {
+        CharSequence text = csq == null ? "null" : csq;
+        for (int i = start; i < end; i++) {
+            append(text.charAt(i));
+        }
+        return this;
+    }
+
+    @Override
+    public Appendable append(char c) throws IOException {
+        if (!buffer.hasRemaining()) {
+            flushBuffer();
+        }
+        buffer.put(c < 0x80 ? (byte) c : (byte) '?');
+        return this;
+    }
+
+    @Override
+    public void flush() throws IOException {
+        flushBuffer();
+    }
+
+    @Override
+    public void close() throws IOException {
+        flushBuffer();
+        channel.close();
+    }
+
+    private void flushBuffer() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+}
@@ -0,0 +1,42 @@
+package nl.han.ica.icss.generator;
+
+import java.io.IOException;
+
+/**
+ * Passes everything on to another Appendable and counts the characters.
+ */
+public class CountingAppendable implements Appendable {
+
+    private final Appendable out;
+    private long count;
+
+    public CountingAppendable(Appendable out) {
+        this.out = out;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    @Override
+    public Appendable append(CharSequence csq) throws IOException {
+        CharSequence text = csq == null ? "null" : csq;
+        count += text.length();
+        out.append(text);
+        return this;
+    }
+
+    @Override
+    public Appendable append(CharSequence csq, int start, int end) throws IOException {
+        count += end - start;
+        out.append(csq, start, end);
+        return this;
+    }
+
+    @Override
+    public Appendable append(char c) throws IOException {
+        count++;
+        out.append(c);
+        return this;
+    }
+}
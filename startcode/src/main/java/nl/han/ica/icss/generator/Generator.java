@@ -5,55 +5,165 @@ import nl.han.ica.icss.ast.literals.ColorLiteral;
 import nl.han.ica.icss.ast.literals.PercentageLiteral;
 import nl.han.ica.icss.ast.literals.PixelLiteral;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Generates CSS from a transformed AST.
+ *
+ * Given a ForkJoinPool, the style rules are split into chunks that are rendered into
+ * their own buffers on the pool and appended to the output in source order, so the
+ * output is the same as that of a sequential run. Only a few chunks per worker are in
+ * flight at a time, which keeps memory bounded when streaming large stylesheets.
+ */
 public class Generator {
 
+    private static final int RULES_PER_CHUNK = 256;
+    private static final int CHUNKS_PER_WORKER = 4;
+
+    private final ForkJoinPool pool;
+
+    public Generator() {
+        this(null);
+    }
+
+    /**
+     * @param pool pool to render the style rules on, or null to render sequentially
+     */
+    public Generator(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
     public String generate(AST ast) {
-        return generateStylesheet(ast.root);
+        StringBuilder result = new StringBuilder();
+        try {
+            generate(ast, result);
+        } catch (IOException e) {
+            // StringBuilder does not throw
+            throw new UncheckedIOException(e);
+        }
+        return result.toString();
     }
 
+    /*
+     Streams the generated CSS to out, one rule at a time.
+     */
+    public void generate(AST ast, Appendable out) throws IOException {
+        generateStylesheet(ast.root, out);
+    }
+
+    /*
+     Streams the generated CSS to a channel through a bounded buffer.
+     The channel is left open.
+     */
+    public void generate(AST ast, WritableByteChannel channel) throws IOException {
+        ChannelAppendable out = new ChannelAppendable(channel);
+        generate(ast, out);
+        out.flush();
+    }
 
-    private String generateStylesheet(Stylesheet sheet) {
-        String result = "";
+    private void generateStylesheet(Stylesheet sheet, Appendable out) throws IOException {
+        if (pool != null) {
+            generateStylesheetParallel(sheet, out);
+            return;
+        }
         for (Object child : sheet.getChildren()) {
             if (child instanceof Stylerule) {
-                result += generateStylerule((Stylerule) child);
+                generateStylerule((Stylerule) child, out);
             }
         }
-        return result;
     }
 
-    private String generateStylerule(Stylerule node) {
-        String result = "";
-        
+    private void generateStylesheetParallel(Stylesheet sheet, Appendable out) throws IOException {
+        List<Stylerule> rules = new ArrayList<>();
+        for (ASTNode child : sheet.body) {
+            if (child instanceof Stylerule) {
+                rules.add((Stylerule) child);
+            }
+        }
+        int maxInFlight = pool.getParallelism() * CHUNKS_PER_WORKER;
+        ArrayDeque<ForkJoinTask<StringBuilder>> inFlight = new ArrayDeque<>();
+        int next = 0;
+        while (next < rules.size() || !inFlight.isEmpty()) {
+            while (next < rules.size() && inFlight.size() < maxInFlight) {
+                List<Stylerule> chunk = rules.subList(next, Math.min(next + RULES_PER_CHUNK, rules.size()));
+                inFlight.add(pool.submit(() -> generateChunk(chunk)));
+                next += chunk.size();
+            }
+            out.append(inFlight.poll().join());
+        }
+    }
+
+    private StringBuilder generateChunk(List<Stylerule> rules) {
+        StringBuilder buffer = new StringBuilder();
+        try {
+            for (Stylerule rule : rules) {
+                generateStylerule(rule, buffer);
+            }
+        } catch (IOException e) {
+            // StringBuilder does not throw
+            throw new UncheckedIOException(e);
+        }
+        return buffer;
+    }
+
+    private void generateStylerule(Stylerule node, Appendable out) throws IOException {
         for (int i = 0; i < node.selectors.size(); i++) {
-            result += node.selectors.get(i).toString();
+            out.append(node.selectors.get(i).toString());
         }
 
-        result += " {\n";
+        out.append(" {\n");
 
         for (Object bodyNode : node.body) {
             if (bodyNode instanceof Declaration) {
-                result += generateDeclaration((Declaration) bodyNode);
+                generateDeclaration((Declaration) bodyNode, out);
             }
         }
 
-        result += "}\n";
-        return result;
+        out.append("}\n");
     }
 
-    private String generateDeclaration(Declaration declaration) {
-        String value = "";
+    private void generateDeclaration(Declaration declaration, Appendable out) throws IOException {
+        out.append("  ").append(declaration.property.name).append(": ");
 
         if (declaration.expression instanceof ColorLiteral) {
-            value = ((ColorLiteral) declaration.expression).value;
+            out.append(((ColorLiteral) declaration.expression).value);
         } else if (declaration.expression instanceof PixelLiteral) {
-            value = ((PixelLiteral) declaration.expression).value + "px";
+            appendInt(((PixelLiteral) declaration.expression).value, out);
+            out.append("px");
         } else if (declaration.expression instanceof PercentageLiteral) {
-            value = ((PercentageLiteral) declaration.expression).value + "%";
+            appendInt(((PercentageLiteral) declaration.expression).value, out);
+            out.append('%');
         } else {
-            value = declaration.expression.toString();
+            out.append(declaration.expression.toString());
         }
 
-        return "  " + declaration.property.name + ": " + value + ";\n";
+        out.append(";\n");
+    }
+
+    // Writes the decimal digits of value without creating an intermediate String
+    static void appendInt(int value, Appendable out) throws IOException {
+        if (value < 0) {
+            out.append('-');
+        } else {
+            value = -value;
+        }
+        // Work with the negative value, so Integer.MIN_VALUE does not overflow
+        int divisor = -1;
+        while (value / 10 <= divisor) {
+            divisor *= 10;
+        }
+        while (divisor != 0) {
+            int digit = value / divisor;
+            out.append((char) ('0' + digit));
+            value -= digit * divisor;
+            divisor /= 10;
+        }
     }
 }
@@ -55,8 +55,9 @@ public class ASTPane extends BorderPane {
         TreeItem<ASTNode> tvNode = new TreeItem<ASTNode>(astNode);
         tvNode.setExpanded(true);
 
-        for(ASTNode child : astNode.getChildren()) {
-            tvNode.getChildren().add(astNodeToTreeItem(child));
+        int count = astNode.getChildCount();
+        for(int i = 0; i < count; i++) {
+            tvNode.getChildren().add(astNodeToTreeItem(astNode.getChild(i)));
         }
         return tvNode;
     }
@@ -1,8 +1,8 @@
 package nl.han.ica.icss.gui;
 
 import java.io.File;
-import java.io.FileOutputStream;
-import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 
 import javafx.geometry.Insets;
 import javafx.scene.control.Label;
@@ -34,10 +34,9 @@ public class OutputPane extends BorderPane {
 		return content.getText();
 	}
 	public void writeToFile(File file) {
+		//Any text set on the pane is written, so it is encoded instead of assumed ASCII
 		try {
-			PrintStream out = new PrintStream(new FileOutputStream(file));
-			out.print(this.getText());
-			out.close();
+			Files.writeString(file.toPath(), this.getText(), StandardCharsets.UTF_8);
 		} catch(Exception exception) {
 			System.err.println(exception);
 		}
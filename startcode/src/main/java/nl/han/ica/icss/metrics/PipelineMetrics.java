@@ -0,0 +1,66 @@
+package nl.han.ica.icss.metrics;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The last measured run of every stage of a Pipeline. Every recorded run is also
+ * committed as a flight recorder event (nl.han.ica.icss.PipelineStage).
+ */
+public class PipelineMetrics {
+
+    private final Map<Stage, StageMetrics> stages = new EnumMap<>(Stage.class);
+
+    /**
+     * Starts measuring a run of a stage, which is also timed as a flight recorder event.
+     */
+    public StageTimer start() {
+        return new StageTimer(new StageEvent());
+    }
+
+    /**
+     * Keeps metrics, measured by a timer of start that was stopped.
+     */
+    public void record(StageTimer timer, StageMetrics metrics) {
+        stages.put(metrics.stage, metrics);
+
+        StageEvent event = timer.event;
+        if (event.shouldCommit()) {
+            event.stage = metrics.stage.name();
+            event.wallNanos = metrics.wallNanos;
+            event.cpuNanos = metrics.cpuNanos;
+            event.allocatedBytes = metrics.allocatedBytes;
+            event.items = metrics.items;
+            event.commit();
+        }
+    }
+
+    /**
+     * @return the last run of stage, or null if it did not run since the last clear
+     */
+    public StageMetrics get(Stage stage) {
+        return stages.get(stage);
+    }
+
+    /**
+     * @return the measured stages in pipeline order
+     */
+    public List<StageMetrics> getAll() {
+        return new ArrayList<>(stages.values());
+    }
+
+    public void clear() {
+        stages.clear();
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder report = new StringBuilder();
+        for (StageMetrics metrics : stages.values()) {
+            report.append(metrics).append('\n');
+        }
+        return report.toString();
+    }
+}
@@ -0,0 +1,200 @@
+package nl.han.ica.icss.metrics;
+
+import nl.han.ica.icss.ast.*;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.StringJoiner;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Attributes the time and allocation of the Checker and Evaluator to the style rules,
+ * if clauses and variable assignments they were spent on.
+ *
+ * Costs are inclusive: a rule includes the if clauses and assignments in its body.
+ * They are measured on the thread that did the work, so parallel checks and transforms
+ * are attributed correctly. Every thread adds to costs of its own without locking;
+ * getCosts sums them, so read it after the check or transform finished. Without a
+ * profiler the Checker and Evaluator skip all of this.
+ */
+public class RuleProfiler {
+
+    //Costs per thread, each only written by its own thread
+    private final Queue<Map<ASTNode, Cost>> threadCosts = new ConcurrentLinkedQueue<>();
+    private final ThreadLocal<Map<ASTNode, Cost>> costs = ThreadLocal.withInitial(() -> {
+        Map<ASTNode, Cost> costs = new IdentityHashMap<>();
+        threadCosts.add(costs);
+        return costs;
+    });
+    //Expression depth of the profiled nodes, from before the Evaluator replaced the expressions
+    private final Map<ASTNode, Integer> depths = new IdentityHashMap<>();
+
+    /**
+     * Records the expression depth of every style rule, if clause and variable assignment
+     * in ast that has none yet. The Checker and Evaluator call this before they measure
+     * anything, so the walk does not count towards the costs.
+     */
+    public void prepare(AST ast) {
+        synchronized (depths) {
+            recordDepths(ast.root);
+        }
+    }
+
+    private int recordDepths(ASTNode node) {
+        int deepest = 0;
+        int count = node.getChildCount();
+        for (int i = 0; i < count; i++) {
+            ASTNode child = node.getChild(i);
+            if (child != null) {
+                deepest = Math.max(deepest, recordDepths(child));
+            }
+        }
+        if (node instanceof Stylerule || node instanceof IfClause || node instanceof VariableAssignment) {
+            depths.putIfAbsent(node, deepest);
+        }
+        return node instanceof Operation ? deepest + 1 : deepest;
+    }
+
+    /**
+     * Starts measuring work on node.
+     */
+    public StageTimer begin(ASTNode node) {
+        return StageTimer.start();
+    }
+
+    /**
+     * Adds the work on node since begin to stage, CHECK or TRANSFORM.
+     */
+    public void end(ASTNode node, Stage stage, StageTimer timer) {
+        StageMetrics metrics = timer.stop(stage, 0);
+        costs.get().computeIfAbsent(node, n -> new Cost(n, 0)).add(metrics);
+    }
+
+    /**
+     * @return the costs summed over all threads
+     */
+    public List<Cost> getCosts() {
+        Map<ASTNode, Cost> total = new IdentityHashMap<>();
+        synchronized (depths) {
+            for (Map<ASTNode, Cost> costs : threadCosts) {
+                for (Cost cost : costs.values()) {
+                    total.computeIfAbsent(cost.node, n -> new Cost(n, depths.computeIfAbsent(n, RuleProfiler::expressionDepth)))
+                            .add(cost);
+                }
+            }
+        }
+        return new ArrayList<>(total.values());
+    }
+
+    public void clear() {
+        for (Map<ASTNode, Cost> costs : threadCosts) {
+            costs.clear();
+        }
+        synchronized (depths) {
+            depths.clear();
+        }
+    }
+
+    /**
+     * @return the n nodes with the highest total wall time, and the n with the deepest
+     * expressions
+     */
+    public String report(int n) {
+        List<Cost> all = getCosts();
+        StringBuilder report = new StringBuilder();
+        report.append(String.format("Most expensive (%d of %d):%n", Math.min(n, all.size()), all.size()));
+        report.append(String.format("%12s %12s %14s %6s  %s%n", "check ms", "eval ms", "alloc bytes", "depth", "node"));
+        all.sort(Comparator.comparingLong(Cost::getWallNanos).reversed());
+        for (Cost cost : all.subList(0, Math.min(n, all.size()))) {
+            report.append(cost).append('\n');
+        }
+
+        report.append(String.format("Deepest expressions:%n"));
+        all.sort(Comparator.comparingInt((Cost cost) -> cost.expressionDepth).reversed());
+        for (Cost cost : all.subList(0, Math.min(n, all.size()))) {
+            if (cost.expressionDepth == 0) {
+                break;
+            }
+            report.append(cost).append('\n');
+        }
+        return report.toString();
+    }
+
+    //Number of nested operations of the deepest expression below node
+    static int expressionDepth(ASTNode node) {
+        int deepest = 0;
+        int count = node.getChildCount();
+        for (int i = 0; i < count; i++) {
+            ASTNode child = node.getChild(i);
+            if (child != null) {
+                deepest = Math.max(deepest, expressionDepth(child));
+            }
+        }
+        return node instanceof Operation ? deepest + 1 : deepest;
+    }
+
+    static String describe(ASTNode node) {
+        if (node instanceof Stylerule) {
+            StringJoiner selectors = new StringJoiner(", ", "Stylerule ", "");
+            for (Selector selector : ((Stylerule) node).selectors) {
+                selectors.add(selector.toString());
+            }
+            return selectors.toString();
+        }
+        return node.getNodeLabel();
+    }
+
+    /**
+     * Cost of one node, summed over all runs since the profiler was created or cleared.
+     */
+    public static class Cost {
+        public final ASTNode node;
+        public final int expressionDepth;
+        private long checkNanos;
+        private long transformNanos;
+        private long allocatedBytes;
+
+        Cost(ASTNode node, int expressionDepth) {
+            this.node = node;
+            this.expressionDepth = expressionDepth;
+        }
+
+        void add(StageMetrics metrics) {
+            if (metrics.stage == Stage.CHECK) {
+                checkNanos += metrics.wallNanos;
+            } else {
+                transformNanos += metrics.wallNanos;
+            }
+            allocatedBytes += Math.max(0, metrics.allocatedBytes);
+        }
+
+        void add(Cost other) {
+            checkNanos += other.checkNanos;
+            transformNanos += other.transformNanos;
+            allocatedBytes += other.allocatedBytes;
+        }
+
+        public long getCheckNanos() {
+            return checkNanos;
+        }
+        public long getTransformNanos() {
+            return transformNanos;
+        }
+        public long getWallNanos() {
+            return checkNanos + transformNanos;
+        }
+        public long getAllocatedBytes() {
+            return allocatedBytes;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%12.3f %12.3f %14d %6d  %s",
+                    checkNanos / 1e6, transformNanos / 1e6, allocatedBytes, expressionDepth, describe(node));
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package nl.han.ica.icss.metrics;
+
+/**
+ * The stages of a compile, in the order a Pipeline runs them.
+ */
+public enum Stage {
+    //Items: tokens
+    LEX,
+    //Items: tokens
+    PARSE,
+    //Items: AST nodes
+    AST_BUILD,
+    //Items: AST nodes
+    CHECK,
+    //Items: AST nodes after the transform
+    TRANSFORM,
+    //Items: characters of CSS
+    GENERATE
+}
@@ -0,0 +1,31 @@
+package nl.han.ica.icss.metrics;
+
+import jdk.jfr.*;
+
+/**
+ * Flight recorder event for one run of a Pipeline stage. Only committed while metrics
+ * are enabled on the Pipeline and a recording has the event enabled.
+ */
+@Name("nl.han.ica.icss.PipelineStage")
+@Label("ICSS Pipeline Stage")
+@Category("ICSS")
+@StackTrace(false)
+class StageEvent extends Event {
+    @Label("Stage")
+    String stage;
+
+    @Label("Wall Time")
+    @Timespan
+    long wallNanos;
+
+    @Label("CPU Time")
+    @Timespan
+    long cpuNanos;
+
+    @Label("Allocated")
+    @DataAmount
+    long allocatedBytes;
+
+    @Label("Items")
+    long items;
+}
@@ -0,0 +1,30 @@
+package nl.han.ica.icss.metrics;
+
+/**
+ * Cost of one run of a stage. Times and allocation are measured on the calling thread,
+ * so work done on a parallel pool only shows in the wall time.
+ */
+public class StageMetrics {
+    public final Stage stage;
+    public final long wallNanos;
+    //-1 when the JVM cannot measure it
+    public final long cpuNanos;
+    //-1 when the JVM cannot measure it
+    public final long allocatedBytes;
+    //Tokens, AST nodes or output characters; see Stage
+    public final long items;
+
+    public StageMetrics(Stage stage, long wallNanos, long cpuNanos, long allocatedBytes, long items) {
+        this.stage = stage;
+        this.wallNanos = wallNanos;
+        this.cpuNanos = cpuNanos;
+        this.allocatedBytes = allocatedBytes;
+        this.items = items;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%-9s %9.3f ms wall %9.3f ms cpu %12d bytes %10d items",
+                stage, wallNanos / 1e6, cpuNanos / 1e6, allocatedBytes, items);
+    }
+}
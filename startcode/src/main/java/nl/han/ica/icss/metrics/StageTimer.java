@@ -0,0 +1,68 @@
+package nl.han.ica.icss.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.function.LongSupplier;
+
+/**
+ * Start of a measurement of wall time, CPU time and allocation on the current thread.
+ */
+public class StageTimer {
+
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+    private static final boolean CPU_TIME = THREADS.isCurrentThreadCpuTimeSupported();
+    //Allocation counting is a HotSpot extension of ThreadMXBean
+    private static final com.sun.management.ThreadMXBean ALLOCATION =
+            THREADS instanceof com.sun.management.ThreadMXBean
+                    && ((com.sun.management.ThreadMXBean) THREADS).isThreadAllocatedMemorySupported()
+                    ? (com.sun.management.ThreadMXBean) THREADS : null;
+
+    private final long wallStart;
+    private final long cpuStart;
+    private final long allocatedStart;
+    //Flight recorder event timed along, for the stages of a Pipeline
+    final StageEvent event;
+
+    StageTimer(StageEvent event) {
+        this.event = event;
+        if (event != null) {
+            event.begin();
+        }
+        allocatedStart = allocatedBytes();
+        cpuStart = cpuTime();
+        wallStart = System.nanoTime();
+    }
+
+    public static StageTimer start() {
+        return new StageTimer(null);
+    }
+
+    /**
+     * @return the cost since start, counting items processed
+     */
+    public StageMetrics stop(Stage stage, long items) {
+        long wall = System.nanoTime() - wallStart;
+        long cpu = CPU_TIME ? cpuTime() - cpuStart : -1;
+        long allocated = ALLOCATION != null ? allocatedBytes() - allocatedStart : -1;
+        if (event != null) {
+            event.end();
+        }
+        return new StageMetrics(stage, wall, cpu, allocated, items);
+    }
+
+    /**
+     * @return the cost since start, with items counted after the measurement stopped
+     */
+    public StageMetrics stop(Stage stage, LongSupplier items) {
+        StageMetrics metrics = stop(stage, 0);
+        return new StageMetrics(stage, metrics.wallNanos, metrics.cpuNanos, metrics.allocatedBytes, items.getAsLong());
+    }
+
+    private static long cpuTime() {
+        return CPU_TIME ? THREADS.getCurrentThreadCpuTime() : 0;
+    }
+
+    private static long allocatedBytes() {
+        return ALLOCATION != null ? ALLOCATION.getThreadAllocatedBytes(Thread.currentThread().getId()) : 0;
+    }
+}
@@ -12,6 +12,7 @@ import nl.han.ica.icss.ast.selectors.ClassSelector;
 import nl.han.ica.icss.ast.selectors.IdSelector;
 import nl.han.ica.icss.ast.selectors.TagSelector;
 import nl.han.ica.icss.ast.types.ExpressionType;
+import org.antlr.v4.runtime.ParserRuleContext;
 
 /**
  * This class extracts the ICSS Abstract Syntax Tree from the Antlr Parse tree.
@@ -22,7 +23,7 @@ public class ASTListener extends ICSSBaseListener {
 	private AST ast;
 
 	//Use this to keep track of the parent nodes when recursively traversing the ast
-	private IHANStack<ASTNode> currentContainer;
+	protected IHANStack<ASTNode> currentContainer;
 
 	public ASTListener() {
 		ast = new AST();
@@ -32,6 +33,16 @@ public class ASTListener extends ICSSBaseListener {
         return ast;
     }
 
+    //Pops the node of a rule that is done, and gives it the source offsets of the rule
+    protected ASTNode pop(ParserRuleContext ctx) {
+        ASTNode node = currentContainer.pop();
+        int start = ctx.start.getStartIndex();
+        //An empty rule (only the stylesheet can be empty) stops before it starts
+        int stop = ctx.stop != null ? Math.max(ctx.stop.getStopIndex(), start - 1) : start - 1;
+        node.setPosition(start, stop);
+        return node;
+    }
+
     @Override
     public void enterStylesheet(ICSSParser.StylesheetContext ctx){
         Stylesheet stylesheet = new Stylesheet();
@@ -40,7 +51,7 @@ public class ASTListener extends ICSSBaseListener {
 
     @Override
     public void exitStylesheet(ICSSParser.StylesheetContext ctx){
-        Stylesheet stylesheet = (Stylesheet)currentContainer.pop();
+        Stylesheet stylesheet = (Stylesheet) pop(ctx);
         ast.setRoot(stylesheet);
     }
 
@@ -52,7 +63,7 @@ public class ASTListener extends ICSSBaseListener {
 
     @Override
     public void exitStylerule(ICSSParser.StyleruleContext ctx){
-        Stylerule stylerule = (Stylerule)currentContainer.pop();
+        Stylerule stylerule = (Stylerule) pop(ctx);
         currentContainer.peek().addChild(stylerule);
     }
 
@@ -64,7 +75,7 @@ VariableAssignment variableAssignment = new VariableAssignment();
 
     @Override
     public void exitVariable_assignment(ICSSParser.Variable_assignmentContext ctx) {
-        VariableAssignment variableAssignment = (VariableAssignment) currentContainer.pop();
+        VariableAssignment variableAssignment = (VariableAssignment) pop(ctx);
         currentContainer.peek().addChild(variableAssignment);
     }
 
@@ -76,7 +87,7 @@ VariableAssignment variableAssignment = new VariableAssignment();
 
     @Override
     public void exitVariable_reference(ICSSParser.Variable_referenceContext ctx) {
-        VariableReference variableReference = (VariableReference)currentContainer.pop();
+        VariableReference variableReference = (VariableReference) pop(ctx);
         currentContainer.peek().addChild(variableReference);
     }
 
@@ -88,7 +99,7 @@ VariableAssignment variableAssignment = new VariableAssignment();
 
     @Override
     public void exitId_selector(ICSSParser.Id_selectorContext ctx){
-        IdSelector selector = (IdSelector)currentContainer.pop();
+        IdSelector selector = (IdSelector) pop(ctx);
         currentContainer.peek().addChild(selector);
     }
 
@@ -100,7 +111,7 @@ VariableAssignment variableAssignment = new VariableAssignment();
 
     @Override
     public void exitClass_selector(ICSSParser.Class_selectorContext ctx){
-        ClassSelector selector = (ClassSelector)currentContainer.pop();
+        ClassSelector selector = (ClassSelector) pop(ctx);
         currentContainer.peek().addChild(selector);
     }
 
@@ -112,7 +123,7 @@ VariableAssignment variableAssignment = new VariableAssignment();
 
     @Override
     public void exitTag_selector(ICSSParser.Tag_selectorContext ctx){
-        TagSelector selector = (TagSelector)currentContainer.pop();
+        TagSelector selector = (TagSelector) pop(ctx);
         currentContainer.peek().addChild(selector);
     }
 
@@ -124,7 +135,7 @@ VariableAssignment variableAssignment = new VariableAssignment();
 
     @Override
     public void exitDeclaration(ICSSParser.DeclarationContext ctx) {
-        Declaration declaration = (Declaration)currentContainer.pop();
+        Declaration declaration = (Declaration) pop(ctx);
         currentContainer.peek().addChild(declaration);
     }
 
@@ -136,7 +147,7 @@ VariableAssignment variableAssignment = new VariableAssignment();
 
     @Override
     public void exitProperty(ICSSParser.PropertyContext ctx) {
-        PropertyName property = (PropertyName)currentContainer.pop();
+        PropertyName property = (PropertyName) pop(ctx);
         currentContainer.peek().addChild(property);
     }
 
@@ -148,7 +159,7 @@ VariableAssignment variableAssignment = new VariableAssignment();
 
     @Override
     public void exitColor_literal(ICSSParser.Color_literalContext ctx) {
-        ColorLiteral colorLiteral = (ColorLiteral)currentContainer.pop();
+        ColorLiteral colorLiteral = (ColorLiteral) pop(ctx);
         currentContainer.peek().addChild(colorLiteral);
     }
 
@@ -160,7 +171,7 @@ VariableAssignment variableAssignment = new VariableAssignment();
 
     @Override
     public void exitPixel_literal(ICSSParser.Pixel_literalContext ctx) {
-        PixelLiteral pixelLiteral = (PixelLiteral)currentContainer.pop();
+        PixelLiteral pixelLiteral = (PixelLiteral) pop(ctx);
         currentContainer.peek().addChild(pixelLiteral);
     }
 
@@ -172,7 +183,7 @@ VariableAssignment variableAssignment = new VariableAssignment();
 
     @Override
     public void exitPercentage_literal(ICSSParser.Percentage_literalContext ctx) {
-        PercentageLiteral percentageLiteral = (PercentageLiteral)currentContainer.pop();
+        PercentageLiteral percentageLiteral = (PercentageLiteral) pop(ctx);
         currentContainer.peek().addChild(percentageLiteral);
     }
 
@@ -184,7 +195,7 @@ VariableAssignment variableAssignment = new VariableAssignment();
 
     @Override
     public void exitBool_literal(ICSSParser.Bool_literalContext ctx) {
-        BoolLiteral boolLiteral = (BoolLiteral)currentContainer.pop();
+        BoolLiteral boolLiteral = (BoolLiteral) pop(ctx);
         currentContainer.peek().addChild(boolLiteral);
     }
 
@@ -196,7 +207,7 @@ VariableAssignment variableAssignment = new VariableAssignment();
 
     @Override
     public void exitScalar_literal(ICSSParser.Scalar_literalContext ctx) {
-        ScalarLiteral scalarLiteral = (ScalarLiteral)currentContainer.pop();
+        ScalarLiteral scalarLiteral = (ScalarLiteral) pop(ctx);
         currentContainer.peek().addChild(scalarLiteral);
     }
 
@@ -208,7 +219,7 @@ VariableAssignment variableAssignment = new VariableAssignment();
 
     @Override
     public void exitAdd_operation(ICSSParser.Add_operationContext ctx) {
-        AddOperation addOperation = (AddOperation)currentContainer.pop();
+        AddOperation addOperation = (AddOperation) pop(ctx);
         currentContainer.peek().addChild(addOperation);
     }
 
@@ -220,7 +231,7 @@ VariableAssignment variableAssignment = new VariableAssignment();
 
     @Override
     public void exitMultiply_operation(ICSSParser.Multiply_operationContext ctx) {
-        MultiplyOperation multiplyOperation = (MultiplyOperation)currentContainer.pop();
+        MultiplyOperation multiplyOperation = (MultiplyOperation) pop(ctx);
         currentContainer.peek().addChild(multiplyOperation);
     }
 
@@ -232,7 +243,7 @@ VariableAssignment variableAssignment = new VariableAssignment();
 
     @Override
     public void exitSubtract_operation(ICSSParser.Subtract_operationContext ctx) {
-        SubtractOperation subtractOperation = (SubtractOperation)currentContainer.pop();
+        SubtractOperation subtractOperation = (SubtractOperation) pop(ctx);
         currentContainer.peek().addChild(subtractOperation);
     }
 
@@ -244,7 +255,7 @@ VariableAssignment variableAssignment = new VariableAssignment();
 
     @Override
     public void exitIf_clause(ICSSParser.If_clauseContext ctx) {
-        IfClause ifClause = (IfClause)currentContainer.pop();
+        IfClause ifClause = (IfClause) pop(ctx);
         currentContainer.peek().addChild(ifClause);
     }
 
@@ -256,7 +267,7 @@ VariableAssignment variableAssignment = new VariableAssignment();
 
     @Override
     public void exitElse_clause(ICSSParser.Else_clauseContext ctx) {
-        ElseClause elseClause = (ElseClause) currentContainer.pop();
+        ElseClause elseClause = (ElseClause) pop(ctx);
         currentContainer.peek().addChild(elseClause);
     }
 
@@ -0,0 +1,209 @@
+package nl.han.ica.icss.parser;
+
+import nl.han.ica.icss.ast.ASTNode;
+import nl.han.ica.icss.ast.Expression;
+import nl.han.ica.icss.ast.Operation;
+import nl.han.ica.icss.ast.PropertyName;
+import nl.han.ica.icss.ast.VariableReference;
+import nl.han.ica.icss.ast.literals.*;
+import nl.han.ica.icss.ast.operations.AddOperation;
+import nl.han.ica.icss.ast.operations.MultiplyOperation;
+import nl.han.ica.icss.ast.operations.SubtractOperation;
+import nl.han.ica.icss.ast.selectors.ClassSelector;
+import nl.han.ica.icss.ast.selectors.IdSelector;
+import nl.han.ica.icss.ast.selectors.TagSelector;
+import org.antlr.v4.runtime.ParserRuleContext;
+import org.antlr.v4.runtime.Token;
+import org.antlr.v4.runtime.tree.TerminalNode;
+
+/**
+ * Builds the AST while the parser runs, so no parse tree has to be kept.
+ * Register it with Parser.addParseListener and parse with setBuildParseTree(false).
+ *
+ * Parse listeners do not get balanced events for the left-recursive expression rule.
+ * An operation is entered only after its left operand is done, and every operand that
+ * becomes the left side of an operation is exited just before that. Expressions are
+ * therefore built with an ExpressionFrame per expression() call. An exited frame is
+ * kept in finishedFrame: it is resumed if an operation follows, and otherwise handed
+ * to its container at the next event (always a terminal or another expression exit).
+ *
+ * Literals are read straight from the token positions in the source text when it
+ * is given, instead of copying the token text first.
+ */
+public class ASTParseListener extends ASTListener {
+
+    //Source text with the same indices as the token stream, or null to use the token text
+    private final CharSequence source;
+    private ExpressionFrame finishedFrame;
+    //The token consumed last
+    private Token lastToken;
+
+    public ASTParseListener(CharSequence source) {
+        super();
+        this.source = source;
+    }
+
+    @Override
+    public void enterEveryRule(ParserRuleContext ctx) {
+        if (isOperation(ctx)) {
+            //The frame that just exited continues as the left operand
+            currentContainer.push(finishedFrame);
+            finishedFrame = null;
+            return;
+        }
+        deliverFinishedFrame();
+        //Only the start of an expression() call enters the plain ExpressionContext
+        if (ctx.getClass() == ICSSParser.ExpressionContext.class) {
+            currentContainer.push(new ExpressionFrame());
+        }
+    }
+
+    @Override
+    public void exitEveryRule(ParserRuleContext ctx) {
+        deliverFinishedFrame();
+        if (ctx instanceof ICSSParser.ExpressionContext) {
+            finishedFrame = (ExpressionFrame) currentContainer.pop();
+            //The right operand was delivered above, so an operation is complete here.
+            //An operand that becomes a left operand exits before its stop is set.
+            if (isOperation(ctx) && finishedFrame.current != null) {
+                Token stop = ctx.stop != null ? ctx.stop : lastToken;
+                finishedFrame.current.setPosition(ctx.start.getStartIndex(), stop.getStopIndex());
+            }
+        }
+    }
+
+    @Override
+    public void visitTerminal(TerminalNode node) {
+        lastToken = node.getSymbol();
+        deliverFinishedFrame();
+    }
+
+    private void deliverFinishedFrame() {
+        if (finishedFrame != null) {
+            currentContainer.peek().addChild(finishedFrame.current);
+            finishedFrame = null;
+        }
+    }
+
+    private static boolean isOperation(ParserRuleContext ctx) {
+        return ctx instanceof ICSSParser.Add_operationContext
+                || ctx instanceof ICSSParser.Multiply_operationContext
+                || ctx instanceof ICSSParser.Subtract_operationContext;
+    }
+
+    @Override
+    public void enterAdd_operation(ICSSParser.Add_operationContext ctx) {
+        ((ExpressionFrame) currentContainer.peek()).startOperation(new AddOperation());
+    }
+
+    @Override
+    public void exitAdd_operation(ICSSParser.Add_operationContext ctx) { }
+
+    @Override
+    public void enterMultiply_operation(ICSSParser.Multiply_operationContext ctx) {
+        ((ExpressionFrame) currentContainer.peek()).startOperation(new MultiplyOperation());
+    }
+
+    @Override
+    public void exitMultiply_operation(ICSSParser.Multiply_operationContext ctx) { }
+
+    @Override
+    public void enterSubtract_operation(ICSSParser.Subtract_operationContext ctx) {
+        ((ExpressionFrame) currentContainer.peek()).startOperation(new SubtractOperation());
+    }
+
+    @Override
+    public void exitSubtract_operation(ICSSParser.Subtract_operationContext ctx) { }
+
+    @Override
+    public void enterVariable_reference(ICSSParser.Variable_referenceContext ctx) {
+        currentContainer.push(new VariableReference(ctx.start.getText()));
+    }
+
+    @Override
+    public void enterId_selector(ICSSParser.Id_selectorContext ctx) {
+        currentContainer.push(new IdSelector(ctx.start.getText()));
+    }
+
+    @Override
+    public void enterClass_selector(ICSSParser.Class_selectorContext ctx) {
+        currentContainer.push(new ClassSelector(ctx.start.getText()));
+    }
+
+    @Override
+    public void enterTag_selector(ICSSParser.Tag_selectorContext ctx) {
+        currentContainer.push(new TagSelector(ctx.start.getText()));
+    }
+
+    @Override
+    public void enterProperty(ICSSParser.PropertyContext ctx) {
+        currentContainer.push(new PropertyName(ctx.start.getText()));
+    }
+
+    @Override
+    public void enterColor_literal(ICSSParser.Color_literalContext ctx) {
+        currentContainer.push(new ColorLiteral(ctx.start.getText()));
+    }
+
+    @Override
+    public void enterPixel_literal(ICSSParser.Pixel_literalContext ctx) {
+        currentContainer.push(new PixelLiteral(parseNumber(ctx.start, "px".length())));
+    }
+
+    @Override
+    public void enterPercentage_literal(ICSSParser.Percentage_literalContext ctx) {
+        currentContainer.push(new PercentageLiteral(parseNumber(ctx.start, "%".length())));
+    }
+
+    @Override
+    public void enterScalar_literal(ICSSParser.Scalar_literalContext ctx) {
+        currentContainer.push(new ScalarLiteral(parseNumber(ctx.start, 0)));
+    }
+
+    @Override
+    public void enterBool_literal(ICSSParser.Bool_literalContext ctx) {
+        currentContainer.push(new BoolLiteral(ctx.start.getType() == ICSSLexer.TRUE));
+    }
+
+    //Parses the leading digits of a number token, ignoring a unit suffix of the given length
+    private int parseNumber(Token token, int suffixLength) {
+        int end = token.getStopIndex() - suffixLength;
+        //Longer numbers may overflow; let parseInt report that like ASTListener does
+        if (source == null || end - token.getStartIndex() >= 9) {
+            String text = token.getText();
+            return Integer.parseInt(text.substring(0, text.length() - suffixLength));
+        }
+        int value = 0;
+        for (int i = token.getStartIndex(); i <= end; i++) {
+            value = value * 10 + (source.charAt(i) - '0');
+        }
+        return value;
+    }
+
+    /*
+     Collects the result of one expression() call. The parser delivers the first operand,
+     then for every operator: startOperation, followed by the right operand.
+     */
+    private static class ExpressionFrame extends ASTNode {
+        private Expression current;
+        private Operation pending;
+
+        void startOperation(Operation operation) {
+            operation.addChild(current);
+            pending = operation;
+            current = null;
+        }
+
+        @Override
+        public ASTNode addChild(ASTNode child) {
+            if (pending != null) {
+                pending.addChild(child);
+                current = pending;
+                pending = null;
+            } else {
+                current = (Expression) child;
+            }
+            return this;
+        }
+    }
+}
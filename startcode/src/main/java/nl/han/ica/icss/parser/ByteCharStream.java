@@ -0,0 +1,135 @@
+package nl.han.ica.icss.parser;
+
+import org.antlr.v4.runtime.CharStream;
+import org.antlr.v4.runtime.IntStream;
+import org.antlr.v4.runtime.misc.Interval;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * CharStream over a buffer with one byte per character, such as a memory-mapped file.
+ * The input is never decoded or copied; only token text is turned into Strings.
+ *
+ * ICSS source is ASCII. Bytes from 0x80 up are read as ISO-8859-1 characters, so
+ * callers that want to refuse such input should check it with findNonAscii first.
+ */
+public class ByteCharStream implements CharStream, CharSequence {
+
+    private final ByteBuffer bytes;
+    private final int size;
+    private final String sourceName;
+    private int index = 0;
+
+    public ByteCharStream(ByteBuffer bytes, String sourceName) {
+        this.bytes = bytes.slice();
+        this.size = this.bytes.remaining();
+        this.sourceName = sourceName;
+    }
+
+    /**
+     * @return the offset of the first byte that is not ASCII, or -1 if all are
+     */
+    public static int findNonAscii(ByteBuffer bytes) {
+        int start = bytes.position();
+        int end = bytes.limit();
+        int i = start;
+        //Eight bytes at a time: any high bit set means a non-ASCII byte in the group
+        for (; i + Long.BYTES <= end; i += Long.BYTES) {
+            if ((bytes.getLong(i) & 0x8080808080808080L) != 0) {
+                break;
+            }
+        }
+        for (; i < end; i++) {
+            if (bytes.get(i) < 0) {
+                return i - start;
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public void consume() {
+        if (index >= size) {
+            throw new IllegalStateException("cannot consume EOF");
+        }
+        index++;
+    }
+
+    @Override
+    public int LA(int i) {
+        if (i == 0) {
+            return 0;
+        }
+        int offset = i > 0 ? index + i - 1 : index + i;
+        if (offset < 0 || offset >= size) {
+            return IntStream.EOF;
+        }
+        return bytes.get(offset) & 0xff;
+    }
+
+    @Override
+    public int mark() {
+        return -1;
+    }
+
+    @Override
+    public void release(int marker) {
+    }
+
+    @Override
+    public int index() {
+        return index;
+    }
+
+    @Override
+    public void seek(int index) {
+        this.index = Math.min(index, size);
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public String getSourceName() {
+        return sourceName == null ? IntStream.UNKNOWN_SOURCE_NAME : sourceName;
+    }
+
+    @Override
+    public String getText(Interval interval) {
+        int start = Math.max(0, interval.a);
+        int stop = Math.min(interval.b, size - 1);
+        if (start > stop) {
+            return "";
+        }
+        return text(start, stop + 1);
+    }
+
+    private String text(int start, int end) {
+        byte[] copy = new byte[end - start];
+        bytes.get(start, copy);
+        return new String(copy, StandardCharsets.ISO_8859_1);
+    }
+
+    @Override
+    public int length() {
+        return size;
+    }
+
+    @Override
+    public char charAt(int index) {
+        return (char) (bytes.get(index) & 0xff);
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        return text(start, end);
+    }
+
+    @Override
+    public String toString() {
+        return text(0, size);
+    }
+}
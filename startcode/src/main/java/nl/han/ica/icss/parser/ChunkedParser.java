@@ -0,0 +1,168 @@
+package nl.han.ica.icss.parser;
+
+import nl.han.ica.icss.ast.AST;
+import nl.han.ica.icss.ast.ASTNode;
+import nl.han.ica.icss.ast.Stylesheet;
+import org.antlr.v4.runtime.*;
+import org.antlr.v4.runtime.atn.PredictionMode;
+import org.antlr.v4.runtime.misc.ParseCancellationException;
+import org.antlr.v4.runtime.tree.ParseTreeWalker;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Parses one large stylesheet in parallel chunks.
+ *
+ * The input is cut between top-level statements, at a ';' or '}' that closes a
+ * statement at brace depth zero. Every chunk is lexed and parsed on the pool with its
+ * own lexer, parser and ASTListener; the statements are then joined in source order.
+ * Chunks are read through a WindowCharStream and the lexer starts at the line and
+ * column where the chunk starts, so all token positions refer to the original input.
+ *
+ * Chunks are parsed with SLL prediction and bail out on the first syntax error. When
+ * any chunk fails, parse returns null and the caller parses the whole input the
+ * regular way, so errors are always reported as for a single parse.
+ */
+public class ChunkedParser {
+
+    //Smallest input worth splitting, and the smallest chunk
+    public static final int MIN_CHUNK_SIZE = 64 * 1024;
+    private static final int CHUNKS_PER_WORKER = 4;
+
+    private final ForkJoinPool pool;
+    private int lastChunkCount;
+
+    public ChunkedParser(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * @return the number of chunks the last parse split its input into
+     */
+    public int getLastChunkCount() {
+        return lastChunkCount;
+    }
+
+    /**
+     * @return the AST of input, or null when a chunk has a syntax error
+     */
+    public AST parse(CharSequence input) {
+        int chunkSize = Math.max(MIN_CHUNK_SIZE, input.length() / (pool.getParallelism() * CHUNKS_PER_WORKER));
+        List<Chunk> chunks = split(input, chunkSize);
+        lastChunkCount = chunks.size();
+
+        List<ForkJoinTask<List<ASTNode>>> tasks = new ArrayList<>(chunks.size());
+        for (Chunk chunk : chunks) {
+            tasks.add(pool.submit(() -> parseChunk(input, chunk)));
+        }
+        ArrayList<ASTNode> body = new ArrayList<>();
+        boolean failed = false;
+        for (ForkJoinTask<List<ASTNode>> task : tasks) {
+            List<ASTNode> statements = task.join();
+            if (statements == null) {
+                failed = true;
+            } else if (!failed) {
+                body.addAll(statements);
+            }
+        }
+        if (failed) {
+            return null;
+        }
+        Stylesheet stylesheet = new Stylesheet(body);
+        if (!body.isEmpty()) {
+            stylesheet.setPosition(body.get(0).getStartOffset(), body.get(body.size() - 1).getStopOffset());
+        }
+        return new AST(stylesheet);
+    }
+
+    /*
+     Cuts input into chunks of at least chunkSize characters that each end after a
+     complete top-level statement, except possibly the last.
+     */
+    static List<Chunk> split(CharSequence input, int chunkSize) {
+        List<Chunk> chunks = new ArrayList<>();
+        int length = input.length();
+        int start = 0;
+        int line = 1;
+        int column = 0;
+        int chunkLine = 1;
+        int chunkColumn = 0;
+        int depth = 0;
+        for (int i = 0; i < length; i++) {
+            char c = input.charAt(i);
+            if (c == '\n') {
+                line++;
+                column = 0;
+            } else {
+                column++;
+            }
+            boolean statementEnd = false;
+            if (c == '{') {
+                depth++;
+            } else if (c == '}') {
+                depth = Math.max(0, depth - 1);
+                statementEnd = depth == 0;
+            } else if (c == ';') {
+                statementEnd = depth == 0;
+            }
+            if (statementEnd && i + 1 - start >= chunkSize && i + 1 < length) {
+                chunks.add(new Chunk(start, i + 1, chunkLine, chunkColumn));
+                start = i + 1;
+                chunkLine = line;
+                chunkColumn = column;
+            }
+        }
+        chunks.add(new Chunk(start, length, chunkLine, chunkColumn));
+        return chunks;
+    }
+
+    private static List<ASTNode> parseChunk(CharSequence input, Chunk chunk) {
+        BaseErrorListener failOnError = new BaseErrorListener() {
+            @Override
+            public void syntaxError(Recognizer<?, ?> recognizer, Object offendingSymbol, int line,
+                                    int charPositionInLine, String msg, RecognitionException e) {
+                throw new ParseCancellationException(msg);
+            }
+        };
+        ICSSLexer lexer = new ICSSLexer(new WindowCharStream(input, chunk.start, chunk.end));
+        lexer.setLine(chunk.line);
+        lexer.setCharPositionInLine(chunk.column);
+        lexer.removeErrorListeners();
+        lexer.addErrorListener(failOnError);
+        CommonTokenStream tokens = new CommonTokenStream(lexer);
+        ICSSParser parser = new ICSSParser(tokens);
+        parser.removeErrorListeners();
+        parser.getInterpreter().setPredictionMode(PredictionMode.SLL);
+        parser.setErrorHandler(new BailErrorStrategy());
+        try {
+            ICSSParser.StylesheetContext tree = parser.stylesheet();
+            //The grammar does not end in EOF; a chunk must be consumed completely
+            if (tokens.LA(1) != Token.EOF) {
+                return null;
+            }
+            ASTListener listener = new ASTListener();
+            new ParseTreeWalker().walk(listener, tree);
+            return listener.getAST().root.body;
+        } catch (ParseCancellationException e) {
+            return null;
+        }
+    }
+
+    static class Chunk {
+        final int start;
+        final int end;
+        //Position of the first character, as counted by the lexer
+        final int line;
+        final int column;
+
+        Chunk(int start, int end, int line, int column) {
+            this.start = start;
+            this.end = end;
+            this.line = line;
+            this.column = column;
+        }
+    }
+}
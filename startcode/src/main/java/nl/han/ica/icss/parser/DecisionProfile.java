@@ -0,0 +1,151 @@
+package nl.han.ica.icss.parser;
+
+import org.antlr.v4.runtime.atn.ATN;
+import org.antlr.v4.runtime.atn.DecisionInfo;
+import org.antlr.v4.runtime.atn.DecisionState;
+import org.antlr.v4.runtime.atn.ParseInfo;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Sums Antlr's prediction statistics for every decision of the ICSS grammar over any
+ * number of parses, e.g. over a whole corpus.
+ *
+ * A parser only collects these with setProfile(true); see Pipeline.setDecisionProfile,
+ * which then parses in full LL mode with exact ambiguity detection.
+ * Every decision is reported with the grammar rule it belongs to and the kind of
+ * decision state. The left-recursive expression rule shows up as a StarLoopEntry
+ * (whether another operator follows) and a StarBlockStart (which operator, decided by
+ * its precedence). Decisions that the generated parser makes with a switch on the next
+ * token never reach the prediction simulator, so they are not counted at all.
+ */
+public class DecisionProfile {
+
+    private static final ATN atn = ICSSParser._ATN;
+
+    private final long[] invocations;
+    private final long[] timeNanos;
+    private final long[] sllLookahead;
+    private final long[] llFallbacks;
+    private final long[] llLookahead;
+    private final long[] ambiguities;
+    private final long[] contextSensitivities;
+    private final long[] errors;
+    private long parses;
+
+    public DecisionProfile() {
+        int decisions = atn.getNumberOfDecisions();
+        invocations = new long[decisions];
+        timeNanos = new long[decisions];
+        sllLookahead = new long[decisions];
+        llFallbacks = new long[decisions];
+        llLookahead = new long[decisions];
+        ambiguities = new long[decisions];
+        contextSensitivities = new long[decisions];
+        errors = new long[decisions];
+    }
+
+    /**
+     * Adds the statistics of one profiled parse.
+     */
+    public synchronized void add(ParseInfo parseInfo) {
+        for (DecisionInfo info : parseInfo.getDecisionInfo()) {
+            int d = info.decision;
+            invocations[d] += info.invocations;
+            timeNanos[d] += info.timeInPrediction;
+            sllLookahead[d] += info.SLL_TotalLook;
+            llFallbacks[d] += info.LL_Fallback;
+            llLookahead[d] += info.LL_TotalLook;
+            ambiguities[d] += info.ambiguities.size();
+            contextSensitivities[d] += info.contextSensitivities.size();
+            errors[d] += info.errors.size();
+        }
+        parses++;
+    }
+
+    public synchronized long getParses() {
+        return parses;
+    }
+
+    public synchronized void clear() {
+        for (int d = 0; d < invocations.length; d++) {
+            invocations[d] = timeNanos[d] = sllLookahead[d] = llFallbacks[d] = llLookahead[d] = 0;
+            ambiguities[d] = contextSensitivities[d] = errors[d] = 0;
+        }
+        parses = 0;
+    }
+
+    /**
+     * @return every decision that was invoked, the most expensive first
+     */
+    public synchronized List<Decision> getDecisions() {
+        List<Decision> decisions = new ArrayList<>();
+        for (int d = 0; d < invocations.length; d++) {
+            if (invocations[d] > 0) {
+                decisions.add(new Decision(d, invocations[d], timeNanos[d], sllLookahead[d], llFallbacks[d],
+                        llLookahead[d], ambiguities[d], contextSensitivities[d], errors[d]));
+            }
+        }
+        decisions.sort(Comparator.comparingLong((Decision decision) -> decision.timeNanos).reversed());
+        return decisions;
+    }
+
+    /**
+     * @return a table of the n most expensive decisions
+     */
+    public String report(int n) {
+        List<Decision> decisions = getDecisions();
+        StringBuilder report = new StringBuilder();
+        report.append(String.format("Decisions over %d parses (%d of %d shown):%n",
+                getParses(), Math.min(n, decisions.size()), decisions.size()));
+        report.append(String.format("%4s  %-36s %10s %10s %9s %9s %9s %6s %6s %6s%n", "#", "rule (decision)",
+                "calls", "time ms", "SLL look", "LL falls", "LL look", "ambig", "ctx", "errors"));
+        for (Decision decision : decisions.subList(0, Math.min(n, decisions.size()))) {
+            report.append(decision).append('\n');
+        }
+        return report.toString();
+    }
+
+    /**
+     * Totals of one grammar decision.
+     */
+    public static class Decision {
+        public final int decision;
+        public final String rule;
+        //Kind of decision state, e.g. StarLoopEntry or StarBlockStart
+        public final String kind;
+        public final long invocations;
+        public final long timeNanos;
+        public final long sllLookahead;
+        public final long llFallbacks;
+        public final long llLookahead;
+        public final long ambiguities;
+        public final long contextSensitivities;
+        public final long errors;
+
+        Decision(int decision, long invocations, long timeNanos, long sllLookahead, long llFallbacks,
+                 long llLookahead, long ambiguities, long contextSensitivities, long errors) {
+            DecisionState state = atn.getDecisionState(decision);
+            this.decision = decision;
+            this.rule = ICSSParser.ruleNames[state.ruleIndex];
+            this.kind = state.getClass().getSimpleName().replace("State", "");
+            this.invocations = invocations;
+            this.timeNanos = timeNanos;
+            this.sllLookahead = sllLookahead;
+            this.llFallbacks = llFallbacks;
+            this.llLookahead = llLookahead;
+            this.ambiguities = ambiguities;
+            this.contextSensitivities = contextSensitivities;
+            this.errors = errors;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%4d  %-36s %10d %10.3f %9d %9d %9d %6d %6d %6d", decision,
+                    rule + " (" + kind + ")", invocations, timeNanos / 1e6, sllLookahead, llFallbacks,
+                    llLookahead, ambiguities, contextSensitivities, errors);
+        }
+    }
+}
@@ -0,0 +1,227 @@
+package nl.han.ica.icss.parser;
+
+import nl.han.ica.icss.ast.AST;
+import nl.han.ica.icss.ast.ASTNode;
+import nl.han.ica.icss.ast.Stylesheet;
+import org.antlr.v4.runtime.*;
+import org.antlr.v4.runtime.atn.PredictionMode;
+import org.antlr.v4.runtime.misc.ParseCancellationException;
+import org.antlr.v4.runtime.tree.ParseTree;
+import org.antlr.v4.runtime.tree.ParseTreeWalker;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Keeps the source offsets of every top-level statement next to the AST, so an edit
+ * only re-parses the statements it touches.
+ *
+ * The re-parsed region runs from the end of the last untouched statement before the
+ * edit to the start of the first untouched statement after it. Both boundaries lie
+ * between single-character tokens (';' or '}') and the next statement, so lexing the
+ * region alone gives the same tokens as lexing the whole file. When the region does
+ * not parse cleanly up to its end, the whole source is parsed again instead, so the
+ * result (including error messages) is always that of a full parse. The syntax errors
+ * of a full parse are also passed to the error listener, if one is set.
+ */
+public class IncrementalParser {
+
+    private String source;
+    private AST ast;
+    private List<String> errors = new ArrayList<>();
+    private ANTLRErrorListener errorListener;
+
+    //Start and end (exclusive) offsets of the statements in ast.root.body; null when unknown
+    private int[] starts;
+    private int[] ends;
+
+    private int lastReparsedStatements;
+
+    public AST getAST() {
+        return ast;
+    }
+    public List<String> getErrors() {
+        return errors;
+    }
+    public String getSource() {
+        return source;
+    }
+    public void setErrorListener(ANTLRErrorListener errorListener) {
+        this.errorListener = errorListener;
+    }
+
+    /**
+     * @return how many statements the last parse or edit produced by parsing, including
+     * all of them after a full parse
+     */
+    public int getLastReparsedStatements() {
+        return lastReparsedStatements;
+    }
+
+    public AST parse(String input) {
+        source = input;
+        Region region = parseRegion(input, 0, false, errorListener);
+        ast = new AST(new Stylesheet(region.statements));
+        spanBody(ast.root);
+        errors = region.errors;
+        if (errors.isEmpty() && region.indexable) {
+            starts = region.starts;
+            ends = region.ends;
+        } else {
+            starts = ends = null;
+        }
+        lastReparsedStatements = region.statements.size();
+        return ast;
+    }
+
+    /**
+     * Replaces length characters at offset by text and updates the AST. Unchanged
+     * statements keep their node instances; the Stylesheet root is kept as well.
+     */
+    public AST edit(int offset, int length, String text) {
+        String edited = source.substring(0, offset) + text + source.substring(offset + length);
+        if (starts == null) {
+            return parse(edited);
+        }
+
+        int count = starts.length;
+        int editEnd = offset + length;
+        //Statements touching the edit are re-parsed too, an insert may extend their tokens
+        int first = 0;
+        while (first < count && ends[first] < offset) {
+            first++;
+        }
+        int last = count - 1;
+        while (last >= 0 && starts[last] > editEnd) {
+            last--;
+        }
+        int delta = text.length() - length;
+        int regionStart = first > 0 ? ends[first - 1] : 0;
+        int regionEnd = (last + 1 < count ? starts[last + 1] : source.length()) + delta;
+
+        Region region = parseRegion(edited.substring(regionStart, regionEnd), regionStart, true, null);
+        if (!region.errors.isEmpty() || !region.indexable) {
+            return parse(edited);
+        }
+
+        List<ASTNode> body = ast.root.body;
+        int removed = Math.max(0, last - first + 1);
+        body.subList(first, first + removed).clear();
+        body.addAll(first, region.statements);
+        //Statements after the edit keep their nodes, but move with the text
+        if (delta != 0) {
+            for (int i = first + region.statements.size(); i < body.size(); i++) {
+                body.get(i).shiftPosition(delta);
+            }
+        }
+        spanBody(ast.root);
+        //The variable slots of the old tree no longer hold
+        ast.root.scopeSizes = null;
+
+        int added = region.statements.size();
+        int[] newStarts = new int[count - removed + added];
+        int[] newEnds = new int[newStarts.length];
+        System.arraycopy(starts, 0, newStarts, 0, first);
+        System.arraycopy(ends, 0, newEnds, 0, first);
+        System.arraycopy(region.starts, 0, newStarts, first, added);
+        System.arraycopy(region.ends, 0, newEnds, first, added);
+        for (int i = first + removed; i < count; i++) {
+            newStarts[i - removed + added] = starts[i] + delta;
+            newEnds[i - removed + added] = ends[i] + delta;
+        }
+        starts = newStarts;
+        ends = newEnds;
+        source = edited;
+        errors = region.errors;
+        lastReparsedStatements = added;
+        return ast;
+    }
+
+    //The stylesheet runs from its first to its last statement, as in a full parse
+    private static void spanBody(Stylesheet stylesheet) {
+        List<ASTNode> body = stylesheet.body;
+        if (!body.isEmpty()) {
+            stylesheet.setPosition(body.get(0).getStartOffset(), body.get(body.size() - 1).getStopOffset());
+        }
+    }
+
+    private static Region parseRegion(String text, int baseOffset, boolean bail, ANTLRErrorListener forward) {
+        Region region = new Region();
+        CharStream inputStream = CharStreams.fromString(text);
+        //Token indices count code points; they only match String offsets without surrogates
+        region.indexable = inputStream.size() == text.length();
+
+        BaseErrorListener errorListener = new BaseErrorListener() {
+            @Override
+            public void syntaxError(Recognizer<?, ?> recognizer, Object offendingSymbol, int line,
+                                    int charPositionInLine, String msg, RecognitionException e) {
+                region.errors.add("Syntax error: " + msg);
+                if (forward != null) {
+                    forward.syntaxError(recognizer, offendingSymbol, line, charPositionInLine, msg, e);
+                }
+            }
+        };
+        ICSSLexer lexer = new ICSSLexer(inputStream);
+        lexer.removeErrorListeners();
+        lexer.addErrorListener(errorListener);
+        CommonTokenStream tokens = new CommonTokenStream(lexer);
+        ICSSParser parser = new ICSSParser(tokens);
+        parser.removeErrorListeners();
+        if (bail) {
+            parser.getInterpreter().setPredictionMode(PredictionMode.SLL);
+            parser.setErrorHandler(new BailErrorStrategy());
+        } else {
+            parser.addErrorListener(errorListener);
+        }
+
+        ICSSParser.StylesheetContext tree;
+        try {
+            tree = parser.stylesheet();
+        } catch (ParseCancellationException e) {
+            region.errors.add("Syntax error");
+            return region;
+        }
+        //The grammar does not end in EOF; a region must be consumed completely
+        if (bail && tokens.LA(1) != Token.EOF) {
+            region.errors.add("Syntax error");
+            return region;
+        }
+
+        ASTListener listener = new ASTListener();
+        new ParseTreeWalker().walk(listener, tree);
+        region.statements = listener.getAST().root.body;
+        if (baseOffset != 0) {
+            for (ASTNode statement : region.statements) {
+                statement.shiftPosition(baseOffset);
+            }
+        }
+        if (!region.errors.isEmpty()) {
+            region.indexable = false;
+            return region;
+        }
+
+        int count = tree.getChildCount();
+        region.starts = new int[count];
+        region.ends = new int[count];
+        for (int i = 0; i < count; i++) {
+            ParseTree child = tree.getChild(i);
+            if (!(child instanceof ParserRuleContext)) {
+                region.indexable = false;
+                break;
+            }
+            ParserRuleContext statement = (ParserRuleContext) child;
+            region.starts[i] = baseOffset + statement.start.getStartIndex();
+            region.ends[i] = baseOffset + statement.stop.getStopIndex() + 1;
+        }
+        region.indexable &= count == region.statements.size();
+        return region;
+    }
+
+    private static class Region {
+        ArrayList<ASTNode> statements = new ArrayList<>();
+        int[] starts;
+        int[] ends;
+        boolean indexable;
+        List<String> errors = new ArrayList<>();
+    }
+}
@@ -0,0 +1,80 @@
+package nl.han.ica.icss.parser;
+
+import org.antlr.v4.runtime.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * CommonTokenStream that lexes all of its input when created, so lexing can be measured
+ * apart from parsing. The syntax errors of the lexer are held back and reported when the
+ * parser first reaches the token that was being lexed, which is when a stream that lexes
+ * on demand reports them. The errors are therefore listed in the same order as with a
+ * CommonTokenStream.
+ */
+public class PrelexedTokenStream extends CommonTokenStream {
+
+    private final ANTLRErrorListener listener;
+    //Lexer errors in the order they were found, from next on not reported yet
+    private final List<LexerError> errors = new ArrayList<>();
+    private int next = 0;
+    //Number of tokens a stream lexing on demand would have lexed so far
+    private int reached = 0;
+    private boolean lexed = false;
+
+    /**
+     * Lexes the input of lexer. Its error listeners are replaced; its errors go to listener
+     * while the tokens are parsed.
+     */
+    public PrelexedTokenStream(Lexer lexer, ANTLRErrorListener listener) {
+        super(lexer);
+        this.listener = listener;
+        lexer.removeErrorListeners();
+        lexer.addErrorListener(new BaseErrorListener() {
+            @Override
+            public void syntaxError(Recognizer<?, ?> recognizer, Object offendingSymbol, int line,
+                                    int charPositionInLine, String msg, RecognitionException e) {
+                errors.add(new LexerError(tokens.size(), recognizer, offendingSymbol, line, charPositionInLine, msg, e));
+            }
+        });
+        fill();
+        lexed = true;
+    }
+
+    @Override
+    protected boolean sync(int i) {
+        if (lexed && i >= reached) {
+            reached = Math.min(i + 1, tokens.size());
+            while (next < errors.size() && errors.get(next).token < reached) {
+                errors.get(next++).report(listener);
+            }
+        }
+        return super.sync(i);
+    }
+
+    private static class LexerError {
+        //Index of the token being lexed when the error was found
+        final int token;
+        final Recognizer<?, ?> recognizer;
+        final Object offendingSymbol;
+        final int line;
+        final int charPositionInLine;
+        final String msg;
+        final RecognitionException e;
+
+        LexerError(int token, Recognizer<?, ?> recognizer, Object offendingSymbol, int line,
+                   int charPositionInLine, String msg, RecognitionException e) {
+            this.token = token;
+            this.recognizer = recognizer;
+            this.offendingSymbol = offendingSymbol;
+            this.line = line;
+            this.charPositionInLine = charPositionInLine;
+            this.msg = msg;
+            this.e = e;
+        }
+
+        void report(ANTLRErrorListener listener) {
+            listener.syntaxError(recognizer, offendingSymbol, line, charPositionInLine, msg, e);
+        }
+    }
+}
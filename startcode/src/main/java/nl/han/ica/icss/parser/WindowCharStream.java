@@ -0,0 +1,82 @@
+package nl.han.ica.icss.parser;
+
+import org.antlr.v4.runtime.CharStream;
+import org.antlr.v4.runtime.IntStream;
+import org.antlr.v4.runtime.misc.Interval;
+
+/**
+ * CharStream over the characters start (inclusive) to end (exclusive) of a larger text.
+ * Indices are those of the whole text, so tokens lexed from the window carry their
+ * offsets in the original input.
+ */
+public class WindowCharStream implements CharStream {
+
+    private final CharSequence text;
+    private final int start;
+    private final int end;
+    private int index;
+
+    public WindowCharStream(CharSequence text, int start, int end) {
+        this.text = text;
+        this.start = start;
+        this.end = end;
+        this.index = start;
+    }
+
+    @Override
+    public void consume() {
+        if (index >= end) {
+            throw new IllegalStateException("cannot consume EOF");
+        }
+        index++;
+    }
+
+    @Override
+    public int LA(int i) {
+        if (i == 0) {
+            return 0;
+        }
+        int offset = i > 0 ? index + i - 1 : index + i;
+        if (offset < start || offset >= end) {
+            return IntStream.EOF;
+        }
+        return text.charAt(offset);
+    }
+
+    @Override
+    public int mark() {
+        return -1;
+    }
+
+    @Override
+    public void release(int marker) {
+    }
+
+    @Override
+    public int index() {
+        return index;
+    }
+
+    @Override
+    public void seek(int index) {
+        this.index = Math.max(start, Math.min(index, end));
+    }
+
+    //The lexer only compares indices with size() to detect the end of its input
+    @Override
+    public int size() {
+        return end;
+    }
+
+    @Override
+    public String getSourceName() {
+        return IntStream.UNKNOWN_SOURCE_NAME;
+    }
+
+    @Override
+    public String getText(Interval interval) {
+        int from = Math.max(start, interval.a);
+        int to = Math.min(interval.b + 1, end);
+        return from < to ? text.subSequence(from, to).toString() : "";
+    }
+}
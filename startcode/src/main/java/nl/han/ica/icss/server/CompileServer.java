@@ -0,0 +1,158 @@
+package nl.han.ica.icss.server;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import nl.han.ica.icss.Pipeline;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Long-running HTTP compile server on the loopback interface, so repeated compiles
+ * skip JVM startup and run with warm JIT and Antlr DFA caches.
+ *
+ * POST /compile with ICSS source as the body returns the CSS (200), or the errors as
+ * a JSON object {"errors": [...]} (422). GET /stats returns request counters, p50/p99
+ * latency of the recent requests and throughput. Requests are handled on a fixed pool
+ * of threads, each compile with its own Pipeline.
+ */
+public class CompileServer {
+
+    private static final int DEFAULT_PORT = 7531;
+    private static final int LATENCY_WINDOW = 10_000;
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+
+    private final LatencyRecorder latencies = new LatencyRecorder(LATENCY_WINDOW);
+    private final AtomicLong failures = new AtomicLong();
+
+    /**
+     * @param port port on localhost, or 0 for any free port
+     * @param threads number of requests handled at the same time
+     */
+    public CompileServer(int port, int threads) throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        executor = Executors.newFixedThreadPool(threads);
+        server.setExecutor(executor);
+        server.createContext("/compile", this::handleCompile);
+        server.createContext("/stats", this::handleStats);
+    }
+
+    public static void main(String[] args) throws IOException {
+        int port = DEFAULT_PORT;
+        int threads = Runtime.getRuntime().availableProcessors();
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            if (args[i].equals("--port")) {
+                port = Integer.parseInt(args[i + 1]);
+            } else if (args[i].equals("--threads")) {
+                threads = Integer.parseInt(args[i + 1]);
+            }
+        }
+        CompileServer server = new CompileServer(port, threads);
+        server.start();
+        System.out.printf("Compile server listening on http://localhost:%d/compile (%d threads)%n",
+                server.getPort(), threads);
+    }
+
+    public void start() {
+        server.start();
+    }
+
+    public void stop() {
+        server.stop(0);
+        executor.shutdown();
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    public LatencyRecorder getLatencies() {
+        return latencies;
+    }
+    public long getFailures() {
+        return failures.get();
+    }
+
+    private void handleCompile(HttpExchange exchange) throws IOException {
+        long start = System.nanoTime();
+        try {
+            if (!exchange.getRequestMethod().equals("POST")) {
+                exchange.getResponseHeaders().set("Allow", "POST");
+                send(exchange, 405, "text/plain", "Use POST\n");
+                return;
+            }
+            String source = new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8);
+
+            Pipeline pipeline = new Pipeline();
+            pipeline.parseString(source);
+            int status;
+            String body;
+            if (pipeline.isParsed() && pipeline.check()) {
+                pipeline.transform();
+                status = 200;
+                body = pipeline.generate();
+            } else {
+                failures.incrementAndGet();
+                status = 422;
+                body = errorsToJson(pipeline.getErrors());
+            }
+            //Recorded before responding, so a client that got its answer sees it counted
+            latencies.record(System.nanoTime() - start);
+            send(exchange, status, status == 200 ? "text/css" : "application/json", body);
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void handleStats(HttpExchange exchange) throws IOException {
+        try {
+            String stats = String.format(Locale.ROOT,
+                    "{\"requests\": %d, \"failures\": %d, \"p50Millis\": %.3f, \"p99Millis\": %.3f, \"requestsPerSecond\": %.1f}\n",
+                    latencies.getCount(), failures.get(),
+                    latencies.percentile(50) / 1e6, latencies.percentile(99) / 1e6, latencies.throughput());
+            send(exchange, 200, "application/json", stats);
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private static void send(HttpExchange exchange, int status, String contentType, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", contentType + "; charset=utf-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    static String errorsToJson(List<String> errors) {
+        StringBuilder json = new StringBuilder("{\"errors\": [");
+        for (int i = 0; i < errors.size(); i++) {
+            if (i > 0) {
+                json.append(", ");
+            }
+            json.append('"');
+            for (char c : errors.get(i).toCharArray()) {
+                if (c == '"' || c == '\\') {
+                    json.append('\\').append(c);
+                } else if (c < 0x20) {
+                    json.append(String.format("\\u%04x", (int) c));
+                } else {
+                    json.append(c);
+                }
+            }
+            json.append('"');
+        }
+        return json.append("]}\n").toString();
+    }
+}
@@ -0,0 +1,57 @@
+package nl.han.ica.icss.server;
+
+import java.util.Arrays;
+
+/**
+ * Keeps the most recent request latencies for percentile reporting, plus totals
+ * since the recorder was created.
+ */
+public class LatencyRecorder {
+
+    private final long[] samples;
+    private final long startNanos = System.nanoTime();
+    private int next;
+    private int size;
+    private long count;
+
+    public LatencyRecorder(int window) {
+        samples = new long[window];
+    }
+
+    public synchronized void record(long nanos) {
+        samples[next] = nanos;
+        next = (next + 1) % samples.length;
+        size = Math.min(size + 1, samples.length);
+        count++;
+    }
+
+    public synchronized long getCount() {
+        return count;
+    }
+
+    /**
+     * @param percentile between 0 and 100
+     * @return the latency in nanoseconds below which that percentage of the recent
+     * requests fall, or 0 when nothing was recorded
+     */
+    public long percentile(double percentile) {
+        long[] sorted;
+        synchronized (this) {
+            sorted = Arrays.copyOf(samples, size);
+        }
+        if (sorted.length == 0) {
+            return 0;
+        }
+        Arrays.sort(sorted);
+        int index = (int) Math.ceil(percentile / 100 * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(index, sorted.length - 1))];
+    }
+
+    /**
+     * @return recorded requests per second since the recorder was created
+     */
+    public double throughput() {
+        double seconds = (System.nanoTime() - startNanos) / 1e9;
+        return seconds > 0 ? getCount() / seconds : 0;
+    }
+}
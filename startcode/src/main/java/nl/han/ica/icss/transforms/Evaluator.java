@@ -5,77 +5,346 @@ import nl.han.ica.icss.ast.literals.*;
 import nl.han.ica.icss.ast.operations.AddOperation;
 import nl.han.ica.icss.ast.operations.MultiplyOperation;
 import nl.han.ica.icss.ast.operations.SubtractOperation;
+import nl.han.ica.icss.metrics.RuleProfiler;
+import nl.han.ica.icss.metrics.Stage;
+import nl.han.ica.icss.metrics.StageTimer;
 
 import java.util.*;
-
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Replaces expressions by their values and if clauses by the body that applies.
+ *
+ * apply does so in the AST itself. evaluate leaves the AST as it is and returns a new
+ * one that shares every node that does not change, such as the selectors, the global
+ * assignments and rules without expressions or if clauses. Once its variables are
+ * resolved, one AST can be evaluated any number of times, also concurrently, as long
+ * as every evaluation has an Evaluator of its own.
+ *
+ * Given a ForkJoinPool, the style rules are evaluated in parallel. All global
+ * assignments are evaluated first into a constant pool: every global assignment has
+ * its own slot, so each rule still sees the values assigned before it. The pool is not
+ * written after that, and each rule only rewrites its own body, so the result is the
+ * same as that of a sequential run.
+ */
 public class Evaluator implements Transform {
 
-    private final LinkedList<Map<String, Literal>> variableValues;
+    //Rules per task below which the rules are evaluated without further splitting
+    private static final int RULES_PER_TASK = 128;
+
+    private final ForkJoinPool pool;
+    private RuleProfiler profiler;
+    //True to build new nodes instead of changing those of the AST
+    private boolean copy;
+    //Values that replace those of the global assignments, by slot; see VariableOverrides
+    private Literal[] overrides;
+
+    //Variable values per scope depth, indexed by the slots assigned by VariableResolver.
+    //Scopes at the same depth never overlap, so their arrays are reused.
+    private Literal[][] variableValues;
 
     public Evaluator() {
-        variableValues = new LinkedList<>();
-        variableValues.add(new HashMap<>());
+        this(null);
+    }
+
+    /**
+     * @param pool pool to evaluate the style rules on, or null to evaluate sequentially
+     */
+    public Evaluator(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * @param profiler profiler to record the cost of every rule, if clause and variable
+     *                 assignment in, or null to not profile
+     */
+    public void setProfiler(RuleProfiler profiler) {
+        this.profiler = profiler;
     }
 
     @Override
     public void apply(AST ast) {
-        applyStylesheet(ast.root);
+        if (profiler != null) {
+            profiler.prepare(ast);
+        }
+        //The Checker already resolved the variables, unless the tree changed since
+        int[] scopeSizes = VariableResolver.resolve(ast, false);
+        variableValues = newScopes(scopeSizes, new Literal[scopeSizes[0]]);
+        copy = false;
+        overrides = null;
+        if (pool == null) {
+            applyStylesheet(ast.root);
+        } else {
+            applyStylesheetParallel(ast.root, scopeSizes, null);
+        }
+    }
+
+    /**
+     * @return the evaluated AST; ast itself is not changed
+     */
+    public AST evaluate(AST ast) {
+        return evaluate(ast, null);
+    }
+
+    /*
+     Evaluates ast like evaluate(ast), except that the global assignments whose slot has
+     a value in overrides get that value.
+     */
+    AST evaluate(AST ast, Literal[] overrides) {
+        this.overrides = overrides;
+        if (profiler != null) {
+            profiler.prepare(ast);
+        }
+        int[] scopeSizes = VariableResolver.resolve(ast, false);
+        variableValues = newScopes(scopeSizes, new Literal[scopeSizes[0]]);
+        copy = true;
+        ArrayList<ASTNode> body;
+        if (pool == null) {
+            body = evaluateStylesheet(ast.root);
+        } else {
+            body = evaluateStylesheetParallel(ast.root, scopeSizes);
+        }
+        Stylesheet stylesheet = new Stylesheet(body);
+        stylesheet.scopeSizes = scopeSizes;
+        copyPosition(ast.root, stylesheet);
+        AST result = new AST(stylesheet);
+        result.lines = ast.lines;
+        return result;
+    }
+
+    /**
+     * @return the value of a top-level assignment of the last applied AST, or null if it
+     * has no valid value
+     */
+    public Literal getGlobalValue(VariableAssignment assignment) {
+        return variableValues[0][assignment.slot];
+    }
+
+    private static Literal[][] newScopes(int[] scopeSizes, Literal[] constants) {
+        Literal[][] scopes = new Literal[scopeSizes.length][];
+        scopes[0] = constants;
+        for (int i = 1; i < scopeSizes.length; i++) {
+            scopes[i] = new Literal[scopeSizes[i]];
+        }
+        return scopes;
     }
 
     private void applyStylesheet(Stylesheet node) {
         for (ASTNode child : node.getChildren()) {
             if (child instanceof VariableAssignment) {
-                VariableAssignment assignment = (VariableAssignment) child;
-                Literal value = evaluateExpression(assignment.expression);
-                variableValues.peek().put(assignment.name.name, value);
+                applyVariableAssignment((VariableAssignment) child, 0);
             } else if (child instanceof Stylerule) {
-                applyStylerule((Stylerule) child);
+                transformStylerule((Stylerule) child);
             }
         }
     }
 
-    private void applyStylerule(Stylerule rule) {
+    private ArrayList<ASTNode> evaluateStylesheet(Stylesheet node) {
+        ArrayList<ASTNode> body = new ArrayList<>(node.body.size());
+        for (ASTNode child : node.body) {
+            if (child instanceof VariableAssignment) {
+                applyVariableAssignment((VariableAssignment) child, 0);
+            } else if (child instanceof Stylerule) {
+                child = transformStylerule((Stylerule) child);
+            }
+            body.add(child);
+        }
+        return body;
+    }
+
+    //Evaluates the rules in parallel, and stores the results in results unless it is null
+    private List<Stylerule> applyStylesheetParallel(Stylesheet node, int[] scopeSizes, Stylerule[] results) {
+        List<Stylerule> rules = new ArrayList<>();
+        for (ASTNode child : node.getChildren()) {
+            if (child instanceof VariableAssignment) {
+                applyVariableAssignment((VariableAssignment) child, 0);
+            } else if (child instanceof Stylerule) {
+                rules.add((Stylerule) child);
+            }
+        }
+        pool.invoke(new ApplyRules(this, rules, 0, rules.size(), scopeSizes, results));
+        return rules;
+    }
+
+    private ArrayList<ASTNode> evaluateStylesheetParallel(Stylesheet node, int[] scopeSizes) {
+        Stylerule[] results = new Stylerule[node.body.size()];
+        applyStylesheetParallel(node, scopeSizes, results);
+        ArrayList<ASTNode> body = new ArrayList<>(node.body.size());
+        int rule = 0;
+        for (ASTNode child : node.body) {
+            body.add(child instanceof Stylerule ? results[rule++] : child);
+        }
+        return body;
+    }
+
+    /*
+     Evaluates a range of rules, splitting it while it is large so idle workers can
+     steal halves. Every leaf gets its own Evaluator with private nested scopes that
+     shares the constant pool of the parent. When evaluating into a new tree, each rule
+     is stored at its index in results.
+     */
+    private static class ApplyRules extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final Evaluator parent;
+        private final List<Stylerule> rules;
+        private final int from;
+        private final int to;
+        private final int[] scopeSizes;
+        private final Stylerule[] results;
+
+        ApplyRules(Evaluator parent, List<Stylerule> rules, int from, int to, int[] scopeSizes,
+                   Stylerule[] results) {
+            this.parent = parent;
+            this.rules = rules;
+            this.from = from;
+            this.to = to;
+            this.scopeSizes = scopeSizes;
+            this.results = results;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= RULES_PER_TASK) {
+                Evaluator evaluator = new Evaluator();
+                evaluator.variableValues = newScopes(scopeSizes, parent.variableValues[0]);
+                evaluator.profiler = parent.profiler;
+                evaluator.copy = parent.copy;
+                for (int i = from; i < to; i++) {
+                    Stylerule rule = evaluator.transformStylerule(rules.get(i));
+                    if (results != null) {
+                        results[i] = rule;
+                    }
+                }
+            } else {
+                int middle = (from + to) >>> 1;
+                invokeAll(new ApplyRules(parent, rules, from, middle, scopeSizes, results),
+                        new ApplyRules(parent, rules, middle, to, scopeSizes, results));
+            }
+        }
+    }
+
+    private Stylerule transformStylerule(Stylerule rule) {
+        if (profiler == null) {
+            return transformStyleruleBody(rule);
+        }
+        StageTimer timer = profiler.begin(rule);
+        Stylerule result = transformStyleruleBody(rule);
+        profiler.end(rule, Stage.TRANSFORM, timer);
+        return result;
+    }
+
+    private Stylerule transformStyleruleBody(Stylerule rule) {
         ArrayList<ASTNode> newBody = new ArrayList<>();
-        processBody(rule.body, newBody);
-        rule.body = newBody;
+        processBody(rule.body, newBody, 1);
+        if (!copy) {
+            rule.body = newBody;
+            return rule;
+        }
+        if (sameNodes(rule.body, newBody)) {
+            return rule;
+        }
+        Stylerule result = new Stylerule();
+        result.selectors = rule.selectors;
+        result.body = newBody;
+        copyPosition(rule, result);
+        return result;
+    }
+
+    private void applyVariableAssignment(VariableAssignment assignment, int depth) {
+        if (profiler == null) {
+            applyVariableAssignmentBody(assignment, depth);
+            return;
+        }
+        StageTimer timer = profiler.begin(assignment);
+        applyVariableAssignmentBody(assignment, depth);
+        profiler.end(assignment, Stage.TRANSFORM, timer);
+    }
+
+    private void applyVariableAssignmentBody(VariableAssignment assignment, int depth) {
+        if (depth == 0 && overrides != null && overrides[assignment.slot] != null) {
+            variableValues[0][assignment.slot] = overrides[assignment.slot];
+        } else {
+            variableValues[depth][assignment.slot] = evaluateExpression(assignment.expression);
+        }
     }
 
-    private void applyDeclaration(Declaration node) {
-        node.expression = evaluateExpression(node.expression);
+    private Declaration transformDeclaration(Declaration node) {
+        Literal value = evaluateExpression(node.expression);
+        if (!copy) {
+            node.expression = value;
+            return node;
+        }
+        if (value == node.expression) {
+            return node;
+        }
+        Declaration result = new Declaration();
+        result.property = node.property;
+        result.expression = value;
+        copyPosition(node, result);
+        return result;
     }
 
-    private Literal getVariableValue(String name) {
-        for (Map<String, Literal> scope : variableValues) {
-            Literal literal = scope.get(name);
-            if (literal != null) {
-                return literal; // found in current scope
+    private static boolean sameNodes(List<ASTNode> nodes, List<ASTNode> others) {
+        if (nodes.size() != others.size()) {
+            return false;
+        }
+        for (int i = 0; i < nodes.size(); i++) {
+            if (nodes.get(i) != others.get(i)) {
+                return false;
             }
         }
-        return null;
+        return true;
+    }
+
+    private static void copyPosition(ASTNode from, ASTNode to) {
+        if (from.hasPosition()) {
+            to.setPosition(from.getStartOffset(), from.getStopOffset());
+        }
     }
 
-    private void evalIfClause(IfClause ifClause, List<ASTNode> newBody) {
+    private Literal getVariableValue(VariableReference reference) {
+        if (reference.slot < 0) {
+            return null;
+        }
+        return variableValues[reference.depth][reference.slot];
+    }
+
+    private void evalIfClause(IfClause ifClause, List<ASTNode> newBody, int depth) {
+        if (profiler == null) {
+            evalIfClauseBody(ifClause, newBody, depth);
+            return;
+        }
+        StageTimer timer = profiler.begin(ifClause);
+        evalIfClauseBody(ifClause, newBody, depth);
+        profiler.end(ifClause, Stage.TRANSFORM, timer);
+    }
+
+    private void evalIfClauseBody(IfClause ifClause, List<ASTNode> newBody, int depth) {
         Literal condition = evaluateExpression(ifClause.conditionalExpression);
 
         if (condition instanceof BoolLiteral) {
             BoolLiteral boolCondition = (BoolLiteral) condition;
 
             if (boolCondition.value) {
-                processBody(ifClause.body, newBody);
+                processBody(ifClause.body, newBody, depth + 1);
             } else if (ifClause.elseClause != null) {
-                processBody(ifClause.elseClause.body, newBody);
+                processBody(ifClause.elseClause.body, newBody, depth + 1);
             }
         }
     }
 
-    private void processBody(List<ASTNode> body, List<ASTNode> newBody) {
+    private void processBody(List<ASTNode> body, List<ASTNode> newBody, int depth) {
         for (ASTNode child : body) {
             if (child instanceof Declaration) {
-                applyDeclaration((Declaration) child);
-                newBody.add(child);
+                newBody.add(transformDeclaration((Declaration) child));
             } else if (child instanceof IfClause) {
-                evalIfClause((IfClause) child, newBody);
+                evalIfClause((IfClause) child, newBody, depth);
             } else {
+                if (child instanceof VariableAssignment) {
+                    applyVariableAssignment((VariableAssignment) child, depth);
+                }
                 newBody.add(child);
             }
         }
@@ -83,28 +352,18 @@ public class Evaluator implements Transform {
 
 
     private Literal evaluateExpression(Expression expression) {
-        switch (expression.getClass().getSimpleName()) {
-            case "PixelLiteral":
-                return (PixelLiteral) expression;
-            case "AddOperation":
-                return evalAddOperation((AddOperation) expression);
-            case "SubtractOperation":
-                return evalSubtractOperation((SubtractOperation) expression);
-            case "MultiplyOperation":
-                return evalMultiplyOperation((MultiplyOperation) expression);
-            case "PercentageLiteral":
-                return (PercentageLiteral) expression;
-            case "ScalarLiteral":
-                return (ScalarLiteral) expression;
-            case "BoolLiteral":
-                return (BoolLiteral) expression;
-            case "ColorLiteral":
-                return (ColorLiteral) expression;
-            case "VariableReference":
-                return getVariableValue(((VariableReference) expression).name);
-            default:
-                return null;
+        if (expression instanceof Literal) {
+            return (Literal) expression;
+        } else if (expression instanceof VariableReference) {
+            return getVariableValue((VariableReference) expression);
+        } else if (expression instanceof AddOperation) {
+            return evalAddOperation((AddOperation) expression);
+        } else if (expression instanceof SubtractOperation) {
+            return evalSubtractOperation((SubtractOperation) expression);
+        } else if (expression instanceof MultiplyOperation) {
+            return evalMultiplyOperation((MultiplyOperation) expression);
         }
+        return null;
     }
 
     // bekijken welk type van literal het is en de juiste methode aanroepen.
@@ -0,0 +1,128 @@
+package nl.han.ica.icss.transforms;
+
+import nl.han.ica.icss.ast.AST;
+import nl.han.ica.icss.ast.ASTNode;
+import nl.han.ica.icss.ast.Literal;
+import nl.han.ica.icss.ast.VariableAssignment;
+import nl.han.ica.icss.ast.literals.*;
+import nl.han.ica.icss.ast.types.ExpressionType;
+import nl.han.ica.icss.diagnostics.Diagnostic;
+import nl.han.ica.icss.diagnostics.ErrorCode;
+import nl.han.ica.icss.diagnostics.Diagnostics;
+import nl.han.ica.icss.generator.Generator;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Evaluates one checked AST with other values for its global variables, as if their
+ * assignments had been changed in the source, without parsing or checking again.
+ *
+ * A value replaces that of the first top-level assignment to the variable, so later
+ * top-level assignments and all references see it; a reassignment like W := W + 5px
+ * builds on it. A value must have the type of the value it replaces, which keeps the
+ * AST correctly typed.
+ *
+ * The AST is evaluated once when an instance is created, to find the types of the
+ * globals. After that it is only read, so one instance can evaluate any number of
+ * variants, also concurrently.
+ */
+public final class VariableOverrides {
+
+    private final AST ast;
+    private final int globalSlots;
+    //First top-level assignment of every global, by name
+    private final Map<String, VariableAssignment> assignments = new HashMap<>();
+    //Types of the globals with a valid value, in source order
+    private final Map<String, ExpressionType> types = new LinkedHashMap<>();
+
+    /**
+     * @param ast AST that was checked without errors
+     */
+    public VariableOverrides(AST ast) {
+        this.ast = ast;
+        globalSlots = VariableResolver.resolve(ast, false)[0];
+        Evaluator evaluator = new Evaluator();
+        evaluator.evaluate(ast);
+        for (ASTNode child : ast.root.body) {
+            if (child instanceof VariableAssignment) {
+                VariableAssignment assignment = (VariableAssignment) child;
+                String name = assignment.name.name;
+                if (assignments.putIfAbsent(name, assignment) == null) {
+                    Literal value = evaluator.getGlobalValue(assignment);
+                    if (value != null) {
+                        types.put(name, typeOf(value));
+                    }
+                }
+            }
+        }
+    }
+
+    public AST getAST() {
+        return ast;
+    }
+
+    /**
+     * @return the type of every global that can be overridden, by name
+     */
+    public Map<String, ExpressionType> getTypes() {
+        return Collections.unmodifiableMap(types);
+    }
+
+    /**
+     * @return the AST evaluated with values, or null if a value does not belong to a
+     * global of its type; the errors are then added to diagnostics
+     */
+    public AST evaluate(Map<String, ? extends Literal> values, Diagnostics diagnostics) {
+        Literal[] overrides = bind(values, diagnostics);
+        return overrides == null ? null : new Evaluator().evaluate(ast, overrides);
+    }
+
+    /**
+     * @return the CSS for the AST evaluated with values, or null if a value does not
+     * belong to a global of its type; the errors are then added to diagnostics
+     */
+    public String generate(Map<String, ? extends Literal> values, Diagnostics diagnostics) {
+        AST evaluated = evaluate(values, diagnostics);
+        return evaluated == null ? null : new Generator().generate(evaluated);
+    }
+
+    //Values by global slot
+    private Literal[] bind(Map<String, ? extends Literal> values, Diagnostics diagnostics) {
+        Literal[] overrides = new Literal[globalSlots];
+        boolean valid = true;
+        for (Map.Entry<String, ? extends Literal> entry : values.entrySet()) {
+            String name = entry.getKey();
+            ExpressionType type = types.get(name);
+            ExpressionType valueType = typeOf(entry.getValue());
+            if (type == null) {
+                diagnostics.add(new Diagnostic(ErrorCode.UNKNOWN_GLOBAL, null, name));
+                valid = false;
+            } else if (valueType != type) {
+                VariableAssignment assignment = assignments.get(name);
+                diagnostics.add(new Diagnostic(ErrorCode.GLOBAL_TYPE, assignment, ast.lines, name, type, valueType));
+                valid = false;
+            } else {
+                overrides[assignments.get(name).slot] = entry.getValue();
+            }
+        }
+        return valid ? overrides : null;
+    }
+
+    static ExpressionType typeOf(Literal literal) {
+        if (literal instanceof ColorLiteral) {
+            return ExpressionType.COLOR;
+        } else if (literal instanceof BoolLiteral) {
+            return ExpressionType.BOOL;
+        } else if (literal instanceof PercentageLiteral) {
+            return ExpressionType.PERCENTAGE;
+        } else if (literal instanceof PixelLiteral) {
+            return ExpressionType.PIXEL;
+        } else if (literal instanceof ScalarLiteral) {
+            return ExpressionType.SCALAR;
+        }
+        return ExpressionType.UNDEFINED;
+    }
+}
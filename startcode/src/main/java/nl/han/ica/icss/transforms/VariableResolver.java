@@ -0,0 +1,131 @@
+package nl.han.ica.icss.transforms;
+
+import nl.han.ica.icss.ast.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Binds every VariableReference to the assignment it refers to, so the Checker and
+ * Evaluator can look variables up by index instead of by name.
+ *
+ * Scopes are numbered by depth: 0 is the stylesheet, 1 a style rule, 2 and deeper the
+ * bodies of if and else clauses. Every VariableAssignment gets its own slot in its
+ * scope, and a reference gets the depth and slot of the last assignment to that name
+ * that precedes it in the same or an enclosing scope. Because no slot is written twice,
+ * a reassigned variable keeps both values. Stylesheet.scopeSizes receives the largest
+ * number of slots used by any scope at each depth.
+ */
+public class VariableResolver implements Transform {
+
+    private final List<HashMap<String, Integer>> scopes = new ArrayList<>();
+    private int[] slotCounts;
+    private int[] scopeSizes;
+
+    /**
+     * Resolves the variables of ast and returns its Stylesheet.scopeSizes. Resolving writes
+     * to the tree, so the Checker, Evaluator and VariableOverrides all resolve through here,
+     * under the lock of the AST: of concurrent users of one AST, only one resolves it.
+     * @param again whether to resolve an AST that was resolved before, because its tree
+     *              may have changed since
+     */
+    public static int[] resolve(AST ast, boolean again) {
+        synchronized (ast) {
+            if (again || ast.root.scopeSizes == null) {
+                new VariableResolver().apply(ast);
+            }
+            return ast.root.scopeSizes;
+        }
+    }
+
+    @Override
+    public void apply(AST ast) {
+        scopes.clear();
+        slotCounts = new int[4];
+        scopeSizes = new int[0];
+        resolveStylesheet(ast.root);
+        ast.root.scopeSizes = scopeSizes;
+    }
+
+    private void resolveStylesheet(Stylesheet sheet) {
+        enterScope();
+        for (ASTNode child : sheet.body) {
+            if (child instanceof VariableAssignment) {
+                resolveVariableAssignment((VariableAssignment) child);
+            } else if (child instanceof Stylerule) {
+                resolveBody(((Stylerule) child).body);
+            }
+        }
+        exitScope();
+    }
+
+    private void resolveBody(List<ASTNode> body) {
+        enterScope();
+        for (ASTNode child : body) {
+            if (child instanceof VariableAssignment) {
+                resolveVariableAssignment((VariableAssignment) child);
+            } else if (child instanceof Declaration) {
+                resolveExpression(((Declaration) child).expression);
+            } else if (child instanceof IfClause) {
+                resolveIfClause((IfClause) child);
+            }
+        }
+        exitScope();
+    }
+
+    private void resolveIfClause(IfClause ifClause) {
+        resolveExpression(ifClause.conditionalExpression);
+        resolveBody(ifClause.body);
+        if (ifClause.elseClause != null) {
+            resolveBody(ifClause.elseClause.body);
+        }
+    }
+
+    private void resolveVariableAssignment(VariableAssignment assignment) {
+        //The value is resolved first: A := A + 1px refers to the previous A
+        resolveExpression(assignment.expression);
+        int depth = scopes.size() - 1;
+        int slot = slotCounts[depth]++;
+        scopes.get(depth).put(assignment.name.name, slot);
+        assignment.slot = slot;
+    }
+
+    private void resolveExpression(Expression expression) {
+        if (expression instanceof VariableReference) {
+            VariableReference reference = (VariableReference) expression;
+            reference.depth = -1;
+            reference.slot = -1;
+            for (int depth = scopes.size() - 1; depth >= 0; depth--) {
+                Integer slot = scopes.get(depth).get(reference.name);
+                if (slot != null) {
+                    reference.depth = depth;
+                    reference.slot = slot;
+                    return;
+                }
+            }
+        } else if (expression instanceof Operation) {
+            resolveExpression(((Operation) expression).lhs);
+            resolveExpression(((Operation) expression).rhs);
+        }
+    }
+
+    private void enterScope() {
+        int depth = scopes.size();
+        scopes.add(new HashMap<>());
+        if (depth == slotCounts.length) {
+            slotCounts = Arrays.copyOf(slotCounts, depth * 2);
+        }
+        slotCounts[depth] = 0;
+        if (depth == scopeSizes.length) {
+            scopeSizes = Arrays.copyOf(scopeSizes, depth + 1);
+        }
+    }
+
+    private void exitScope() {
+        int depth = scopes.size() - 1;
+        scopeSizes[depth] = Math.max(scopeSizes[depth], slotCounts[depth]);
+        scopes.remove(depth);
+    }
+}
@@ -0,0 +1,100 @@
+package nl.han.ica.icss;
+
+import nl.han.ica.icss.diagnostics.Diagnostics;
+import nl.han.ica.icss.diagnostics.ErrorCode;
+import nl.han.ica.icss.metrics.Stage;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class IcssCompilerTest {
+
+	String readResource(String resource) throws IOException {
+		InputStream inputStream = this.getClass().getClassLoader().getResourceAsStream(resource);
+		return new String(inputStream.readAllBytes(), StandardCharsets.UTF_8);
+	}
+
+	String compileWithPipeline(String input) {
+		Pipeline pipeline = new Pipeline();
+		pipeline.parseString(input);
+		assertTrue(pipeline.check());
+		pipeline.transform();
+		return pipeline.generate();
+	}
+
+	@Test
+	void testCompileMatchesPipeline() throws IOException {
+		String input = readResource("level3.icss");
+		CompilationResult result = new IcssCompiler(null, Diagnostics.UNLIMITED, false, true).compile(input);
+		assertTrue(result.isSuccess());
+		assertEquals(compileWithPipeline(input), result.getCss());
+		assertTrue(result.getDiagnostics().isEmpty());
+		for (Stage stage : Stage.values()) {
+			assertNotNull(result.getStageMetrics(stage), stage.name());
+		}
+		assertEquals(Stage.values().length, result.getStages().size());
+		assertTrue(result.getWallNanos() > 0);
+	}
+
+	@Test
+	void testFailedCompile() {
+		CompilationResult result = new IcssCompiler(null, 1, false).compile("p { width: A; height: B; }");
+		assertFalse(result.isSuccess());
+		assertNull(result.getCss());
+		assertEquals(1, result.getDiagnostics().size());
+		assertEquals(2, result.getErrorsFound());
+		assertEquals(ErrorCode.UNDEFINED_VARIABLE, result.getDiagnostics().get(0).code);
+		assertEquals(result.getDiagnostics().get(0).toString(), result.getErrors().get(0));
+		assertNull(result.getStageMetrics(Stage.TRANSFORM));
+		assertTrue(result.getStages().isEmpty());
+		assertThrows(UnsupportedOperationException.class, () -> result.getDiagnostics().clear());
+	}
+
+	@Test
+	void testConcurrentAsyncCompiles() throws Exception {
+		List<String> inputs = new ArrayList<>();
+		for (String level : new String[]{"level0.icss", "level1.icss", "level2.icss", "level3.icss"}) {
+			inputs.add(readResource(level));
+		}
+		IcssCompiler compiler = new IcssCompiler();
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			List<CompletableFuture<CompilationResult>> results = new ArrayList<>();
+			for (int i = 0; i < 64; i++) {
+				results.add(compiler.compileAsync(inputs.get(i % inputs.size()), executor));
+			}
+			for (int i = 0; i < results.size(); i++) {
+				CompilationResult result = results.get(i).get();
+				assertTrue(result.isSuccess(), result.getErrors().toString());
+				assertEquals(compileWithPipeline(inputs.get(i % inputs.size())), result.getCss());
+			}
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	@Test
+	void testCompileAsyncMissingFile(@TempDir Path dir) {
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		try {
+			CompletableFuture<CompilationResult> result = new IcssCompiler().compileAsync(dir.resolve("missing.icss"), executor);
+			ExecutionException e = assertThrows(ExecutionException.class, result::get);
+			assertTrue(e.getCause() instanceof UncheckedIOException);
+		} finally {
+			executor.shutdown();
+		}
+	}
+}
@@ -0,0 +1,411 @@
+package nl.han.ica.icss;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import nl.han.ica.icss.ast.Stylerule;
+import nl.han.ica.icss.diagnostics.Diagnostic;
+import nl.han.ica.icss.diagnostics.Diagnostics;
+import nl.han.ica.icss.metrics.PipelineMetrics;
+import nl.han.ica.icss.metrics.RuleProfiler;
+import nl.han.ica.icss.metrics.Stage;
+import nl.han.ica.icss.metrics.StageMetrics;
+import nl.han.ica.icss.parser.DecisionProfile;
+import nl.han.ica.icss.parser.Fixtures;
+import org.antlr.v4.runtime.atn.AmbiguityInfo;
+import org.antlr.v4.runtime.atn.ContextSensitivityInfo;
+import org.antlr.v4.runtime.atn.DecisionInfo;
+import org.antlr.v4.runtime.atn.ParseInfo;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PipelineTest {
+
+	String readResource(String resource) throws IOException {
+		InputStream inputStream = this.getClass().getClassLoader().getResourceAsStream(resource);
+		return new String(inputStream.readAllBytes(), StandardCharsets.UTF_8);
+	}
+
+	Pipeline parse(String input, boolean twoStageParsing) {
+		Pipeline pipeline = new Pipeline();
+		pipeline.setTwoStageParsing(twoStageParsing);
+		pipeline.parseString(input);
+		return pipeline;
+	}
+
+	@Test
+	void testTwoStageParsingMatchesLL() throws IOException {
+		for (String level : new String[]{"level0.icss", "level1.icss", "level2.icss", "level3.icss"}) {
+			String input = readResource(level);
+			Pipeline ll = parse(input, false);
+			Pipeline twoStage = parse(input, true);
+			assertTrue(twoStage.isParsed());
+			assertEquals(ll.getAST(), twoStage.getAST());
+		}
+	}
+
+	@Test
+	void testTwoStageParsingReportsSameErrors() {
+		String input = "p { width: 10px \n a { color: #ff0000; }";
+		Pipeline ll = parse(input, false);
+		Pipeline twoStage = parse(input, true);
+		assertFalse(twoStage.isParsed());
+		assertEquals(ll.getErrors(), twoStage.getErrors());
+	}
+
+	Pipeline parseWithoutParseTree(String input) {
+		Pipeline pipeline = new Pipeline();
+		pipeline.setBuildParseTree(false);
+		pipeline.parseString(input);
+		return pipeline;
+	}
+
+	@Test
+	void testParseWithoutParseTreeMatchesWalker() throws IOException {
+		String expressions = "W := 10px;\n"
+				+ "p { width: 1px + 2 * 3px - (4px + W) * 2 - 5px + 6px; height: 3 * 4 * 5px; }\n"
+				+ "a { if[TRUE] { width: 50% + 2 * 25%; } else { width: ((W)); } }\n";
+		String[] inputs = {readResource("level0.icss"), readResource("level1.icss"),
+				readResource("level2.icss"), readResource("level3.icss"), expressions};
+		for (String input : inputs) {
+			Pipeline walked = parse(input, true);
+			Pipeline direct = parseWithoutParseTree(input);
+			assertTrue(direct.isParsed());
+			assertEquals(walked.getAST(), direct.getAST());
+			assertEquals(walked.getAST().toString(), direct.getAST().toString());
+			assertEquals(Fixtures.positions(walked.getAST().root), Fixtures.positions(direct.getAST().root));
+		}
+	}
+
+	@Test
+	void testParseWithoutParseTreeReportsSameErrors() {
+		String input = "p { width: 10px + ; }";
+		Pipeline walked = parse(input, true);
+		Pipeline direct = parseWithoutParseTree(input);
+		assertFalse(direct.isParsed());
+		assertEquals(walked.getErrors(), direct.getErrors());
+	}
+
+	@Test
+	void testApplyEditMatchesParseString() throws IOException {
+		String input = readResource("level3.icss");
+		Pipeline pipeline = parse(input, true);
+		assertTrue(pipeline.check());
+
+		int offset = input.indexOf("#ff0000");
+		pipeline.applyEdit(offset, "#ff0000".length(), "#00ff00");
+		Pipeline full = parse(input.replace("#ff0000", "#00ff00"), true);
+
+		assertTrue(pipeline.isParsed());
+		assertEquals(full.getAST(), pipeline.getAST());
+		assertTrue(pipeline.check());
+		pipeline.transform();
+		full.check();
+		full.transform();
+		assertEquals(full.generate(), pipeline.generate());
+	}
+
+	@Test
+	void testApplyEditReportsErrorsLikeParseString() {
+		String input = "p { width: 10px; }\na { color: #ff0000; }\n.b { height: 5px; }\n";
+		String once = input.replace("10px;", "10px +;");
+		String edited = once.replace("#ff0000", "");
+		for (int maxErrors : new int[]{Diagnostics.UNLIMITED, 1}) {
+			Pipeline pipeline = new Pipeline();
+			pipeline.setMaxErrors(maxErrors);
+			pipeline.setFailFast(maxErrors == 1);
+			pipeline.parseString(input);
+			pipeline.applyEdit(input.indexOf("10px;"), 5, "10px +;");
+			pipeline.applyEdit(once.indexOf("#ff0000"), 7, "");
+
+			Pipeline full = new Pipeline();
+			full.setMaxErrors(maxErrors);
+			full.setFailFast(maxErrors == 1);
+			full.parseString(edited);
+			assertFalse(pipeline.isParsed());
+			assertEquals(full.getErrors(), pipeline.getErrors());
+			List<Diagnostic> expected = full.getDiagnostics().getAll();
+			List<Diagnostic> actual = pipeline.getDiagnostics().getAll();
+			for (int i = 0; i < expected.size(); i++) {
+				assertEquals(expected.get(i).code, actual.get(i).code);
+				assertEquals(expected.get(i).getLine(), actual.get(i).getLine());
+				assertEquals(expected.get(i).getColumn(), actual.get(i).getColumn());
+			}
+		}
+	}
+
+	@Test
+	void testApplyEditWithoutSource(@TempDir Path dir) throws IOException {
+		assertThrows(IllegalStateException.class, () -> new Pipeline().applyEdit(0, 0, "p { }"));
+
+		Path file = dir.resolve("utf8.icss");
+		Files.writeString(file, "p { width: 10px; } \u00e9", StandardCharsets.UTF_8);
+		Pipeline pipeline = new Pipeline();
+		pipeline.parseFile(file);
+		assertThrows(IllegalStateException.class, () -> pipeline.applyEdit(0, 1, "a"));
+	}
+
+	@Test
+	void testParseFileMatchesParseString(@TempDir Path dir) throws IOException {
+		for (boolean buildParseTree : new boolean[]{true, false}) {
+			for (String level : new String[]{"level0.icss", "level1.icss", "level2.icss", "level3.icss"}) {
+				String input = readResource(level);
+				Path file = dir.resolve(level);
+				Files.writeString(file, input, StandardCharsets.US_ASCII);
+
+				Pipeline expected = parse(input, true);
+				Pipeline mapped = new Pipeline();
+				mapped.setBuildParseTree(buildParseTree);
+				mapped.parseFile(file);
+				assertTrue(mapped.isParsed());
+				assertEquals(expected.getAST(), mapped.getAST());
+				assertEquals(expected.getAST().toString(), mapped.getAST().toString());
+
+				Pipeline streamed = new Pipeline();
+				streamed.parse(Channels.newChannel(new ByteArrayInputStream(input.getBytes(StandardCharsets.US_ASCII))));
+				assertEquals(expected.getAST(), streamed.getAST());
+			}
+		}
+	}
+
+	@Test
+	void testParseFileRejectsNonAscii(@TempDir Path dir) throws IOException {
+		Path file = dir.resolve("utf8.icss");
+		Files.writeString(file, "p { width: 10px; }\na { color: #ff0000; } \u00e9", StandardCharsets.UTF_8);
+		Pipeline pipeline = new Pipeline();
+		pipeline.parseFile(file);
+		assertFalse(pipeline.isParsed());
+		assertEquals(1, pipeline.getErrors().size());
+		assertEquals("Input is not ASCII: byte 195 at offset 41", pipeline.getErrors().get(0));
+	}
+
+	@Test
+	void testApplyEditAfterParseFile(@TempDir Path dir) throws IOException {
+		Path file = dir.resolve("edit.icss");
+		Files.writeString(file, "p { width: 10px; }\na { color: #ff0000; }\n");
+		Pipeline pipeline = new Pipeline();
+		pipeline.parseFile(file);
+		pipeline.applyEdit(11, 4, "20px");
+		assertEquals(parse("p { width: 20px; }\na { color: #ff0000; }\n", true).getAST().toString(),
+				pipeline.getAST().toString());
+	}
+
+	@Test
+	void testMetricsCoverEveryStage(@TempDir Path dir) throws IOException {
+		Pipeline pipeline = new Pipeline();
+		assertNull(pipeline.getMetrics());
+		pipeline.setMetricsEnabled(true);
+
+		Recording recording = new Recording();
+		recording.enable("nl.han.ica.icss.PipelineStage");
+		recording.start();
+		pipeline.parseString(readResource("level3.icss"));
+		assertTrue(pipeline.check());
+		pipeline.transform();
+		String css = pipeline.generate();
+		recording.stop();
+
+		PipelineMetrics metrics = pipeline.getMetrics();
+		for (Stage stage : Stage.values()) {
+			StageMetrics stageMetrics = metrics.get(stage);
+			assertNotNull(stageMetrics, stage.name());
+			assertTrue(stageMetrics.wallNanos > 0);
+			assertTrue(stageMetrics.items > 0);
+		}
+		assertEquals(metrics.get(Stage.LEX).items, metrics.get(Stage.PARSE).items);
+		assertEquals(metrics.get(Stage.AST_BUILD).items, metrics.get(Stage.CHECK).items);
+		assertEquals(css.length(), metrics.get(Stage.GENERATE).items);
+
+		Path file = dir.resolve("stages.jfr");
+		recording.dump(file);
+		recording.close();
+		List<RecordedEvent> events = RecordingFile.readAllEvents(file);
+		assertEquals(Stage.values().length, events.size());
+		assertEquals("GENERATE", events.get(events.size() - 1).getString("stage"));
+		for (RecordedEvent event : events) {
+			assertFalse(event.getDuration().isZero(), event.getString("stage"));
+		}
+	}
+
+	@Test
+	void testMetricsDoNotChangeErrors() {
+		String input = "p { width: 10px } ~ a { color: ; } ` b { height: 2px; }\n$ c { }";
+		Pipeline plain = new Pipeline();
+		plain.parseString(input);
+		Pipeline measured = new Pipeline();
+		measured.setMetricsEnabled(true);
+		measured.parseString(input);
+
+		//Lexer errors are reported as the parser reaches them, between its own errors
+		assertEquals(plain.getErrors(), measured.getErrors());
+		assertEquals(5, measured.getErrors().size());
+		assertTrue(measured.getErrors().get(1).contains("missing ';'"));
+		assertTrue(measured.getErrors().get(3).contains("'`'"));
+		assertNotNull(measured.getMetrics().get(Stage.LEX));
+	}
+
+	@Test
+	void testMetricsAreClearedByNextParse() throws IOException {
+		Pipeline pipeline = new Pipeline();
+		pipeline.setMetricsEnabled(true);
+		pipeline.parseString(readResource("level3.icss"));
+		assertTrue(pipeline.check());
+		pipeline.transform();
+		pipeline.generate();
+		assertNotNull(pipeline.getMetrics().get(Stage.GENERATE));
+
+		pipeline.parseString("p { width: #ff0000; }");
+		assertFalse(pipeline.check());
+		assertNotNull(pipeline.getMetrics().get(Stage.CHECK));
+		assertNull(pipeline.getMetrics().get(Stage.TRANSFORM));
+		assertNull(pipeline.getMetrics().get(Stage.GENERATE));
+	}
+
+	@Test
+	void testProfilerCoversRulesIfClausesAndAssignments() throws IOException {
+		Pipeline pipeline = new Pipeline();
+		RuleProfiler profiler = new RuleProfiler();
+		pipeline.setProfiler(profiler);
+		pipeline.parseString(readResource("level3.icss"));
+		assertTrue(pipeline.check());
+		pipeline.transform();
+
+		//4 global assignments, 4 rules and 2 if clauses, all of them evaluated
+		List<RuleProfiler.Cost> costs = profiler.getCosts();
+		assertEquals(10, costs.size());
+		for (RuleProfiler.Cost cost : costs) {
+			assertTrue(cost.getCheckNanos() > 0, cost.toString());
+			assertTrue(cost.getTransformNanos() > 0, cost.toString());
+			int expectedDepth = cost.node instanceof Stylerule
+					&& ((Stylerule) cost.node).selectors.get(0).toString().equals("#menu") ? 1 : 0;
+			assertEquals(expectedDepth, cost.expressionDepth, cost.toString());
+		}
+
+		String report = profiler.report(3);
+		assertTrue(report.startsWith("Most expensive (3 of 10):"), report);
+		String deepest = report.substring(report.indexOf("Deepest expressions:"));
+		assertTrue(deepest.trim().endsWith("Stylerule #menu"), report);
+	}
+
+	@Test
+	void testProfilerSumsParallelWork() throws IOException {
+		StringBuilder input = new StringBuilder(readResource("level3.icss"));
+		for (int i = 0; i < 1000; i++) {
+			input.append(".r").append(i).append(" { width: ParWidth * 2 + ").append(i).append("px; }\n");
+		}
+		RuleProfiler profiler = new RuleProfiler();
+		ForkJoinPool pool = new ForkJoinPool(4);
+		try {
+			Pipeline pipeline = new Pipeline();
+			pipeline.setParallelPool(pool);
+			pipeline.setProfiler(profiler);
+			pipeline.parseString(input.toString());
+			assertTrue(pipeline.check());
+			pipeline.transform();
+		} finally {
+			pool.shutdown();
+		}
+
+		List<RuleProfiler.Cost> costs = profiler.getCosts();
+		assertEquals(1010, costs.size());
+		for (RuleProfiler.Cost cost : costs) {
+			assertTrue(cost.getCheckNanos() > 0, cost.toString());
+			assertTrue(cost.getTransformNanos() > 0, cost.toString());
+			if (cost.node instanceof Stylerule && ((Stylerule) cost.node).selectors.get(0).toString().startsWith(".r")) {
+				assertEquals(2, cost.expressionDepth, cost.toString());
+			}
+		}
+		profiler.clear();
+		assertTrue(profiler.getCosts().isEmpty());
+	}
+
+	@Test
+	void testDecisionProfileSumsOverCorpus() throws IOException {
+		DecisionProfile profile = new DecisionProfile();
+		for (String resource : new String[]{"level0.icss", "level1.icss", "level2.icss", "level3.icss"}) {
+			Pipeline pipeline = new Pipeline();
+			pipeline.setDecisionProfile(profile);
+			pipeline.parseString(readResource(resource));
+			assertTrue(pipeline.isParsed(), resource);
+		}
+		assertEquals(4, profile.getParses());
+
+		List<DecisionProfile.Decision> decisions = profile.getDecisions();
+		Set<String> rules = decisions.stream().map(decision -> decision.rule).collect(Collectors.toSet());
+		//Only expression needs more than one token of lookahead; the other decisions are a switch on the next token
+		assertEquals(Set.of("expression"), rules);
+		for (DecisionProfile.Decision decision : decisions) {
+			assertTrue(decision.invocations > 0);
+			assertEquals(0, decision.errors);
+		}
+		assertTrue(profile.report(1).startsWith("Decisions over 4 parses (1 of " + decisions.size() + " shown):"));
+
+		//Invalid input is still profiled, including the full LL parse that reports the error
+		Pipeline pipeline = new Pipeline();
+		pipeline.setDecisionProfile(profile);
+		pipeline.parseString("p { width: 10px + ; }");
+		assertFalse(pipeline.isParsed());
+		assertEquals(5, profile.getParses());
+	}
+
+	long profiledInvocations(String input, boolean twoStageParsing) {
+		DecisionProfile profile = new DecisionProfile();
+		Pipeline pipeline = new Pipeline();
+		pipeline.setTwoStageParsing(twoStageParsing);
+		pipeline.setDecisionProfile(profile);
+		pipeline.parseString(input);
+		return profile.getDecisions().stream().mapToLong(decision -> decision.invocations).sum();
+	}
+
+	@Test
+	void testDecisionProfileParsesInFullLL() {
+		//Without profiling, invalid input is parsed twice: first with SLL, then with LL
+		String input = "p { width: 1px + 2px * 3; height: 10px + ; }";
+		long expected = profiledInvocations(input, false);
+		assertTrue(expected > 0);
+		assertEquals(expected, profiledInvocations(input, true));
+	}
+
+	@Test
+	void testDecisionProfileSumsLLCounters() {
+		DecisionInfo info = new DecisionInfo(8);
+		info.invocations = 3;
+		info.SLL_TotalLook = 4;
+		info.LL_Fallback = 2;
+		info.LL_TotalLook = 5;
+		info.ambiguities.add(new AmbiguityInfo(8, null, null, null, 0, 1, true));
+		info.contextSensitivities.add(new ContextSensitivityInfo(8, null, null, 0, 1));
+		ParseInfo parseInfo = new ParseInfo(null) {
+			@Override
+			public DecisionInfo[] getDecisionInfo() {
+				return new DecisionInfo[]{info};
+			}
+		};
+		DecisionProfile profile = new DecisionProfile();
+		profile.add(parseInfo);
+		profile.add(parseInfo);
+
+		DecisionProfile.Decision decision = profile.getDecisions().get(0);
+		assertEquals("expression", decision.rule);
+		assertEquals(6, decision.invocations);
+		assertEquals(8, decision.sllLookahead);
+		assertEquals(4, decision.llFallbacks);
+		assertEquals(10, decision.llLookahead);
+		assertEquals(2, decision.ambiguities);
+		assertEquals(2, decision.contextSensitivities);
+	}
+}
@@ -0,0 +1,84 @@
+package nl.han.ica.icss;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StreamingCompilerTest {
+
+	String readResource(String resource) throws IOException {
+		InputStream inputStream = this.getClass().getClassLoader().getResourceAsStream(resource);
+		return new String(inputStream.readAllBytes(), StandardCharsets.UTF_8);
+	}
+
+	Pipeline compile(String input) {
+		Pipeline pipeline = new Pipeline();
+		pipeline.parseString(input);
+		if (pipeline.check()) {
+			pipeline.transform();
+		}
+		return pipeline;
+	}
+
+	@Test
+	void testStreamingMatchesPipeline() throws IOException {
+		StringBuilder large = new StringBuilder("W := 10px;\nF := TRUE;\n");
+		for (int i = 0; i < 2000; i++) {
+			if (i % 300 == 0) {
+				large.append("W := W + ").append(i).append("px;\nF := ").append(i % 600 == 0 ? "FALSE" : "TRUE").append(";\n");
+			}
+			large.append(".r").append(i).append(" {\n\tL := W * ").append(i % 4).append(";\n")
+					.append("\tif[F] { width: L; } else { height: W - 1px; }\n}\n");
+		}
+		String[] inputs = {readResource("level0.icss"), readResource("level1.icss"),
+				readResource("level2.icss"), readResource("level3.icss"), large.toString()};
+		for (String input : inputs) {
+			StringBuilder out = new StringBuilder();
+			StreamingCompiler compiler = new StreamingCompiler();
+			List<String> errors = compiler.compile(new StringReader(input), out);
+			assertEquals(List.of(), errors);
+			assertEquals(compile(input).generate(), out.toString());
+		}
+	}
+
+	@Test
+	void testStreamingReportsSameErrors() throws IOException {
+		String input = "C := #ff0000;\nB := C + 2px;\np { width: B; color: C; }\na { height: C; }\n";
+		StreamingCompiler compiler = new StreamingCompiler();
+		List<String> errors = compiler.compile(new StringReader(input), new StringBuilder());
+		assertEquals(4, compiler.getStatements());
+		assertFalse(errors.isEmpty());
+		assertEquals(compile(input).getErrors(), errors);
+	}
+
+	@Test
+	void testGlobalWithoutValueKeepsItsType() throws IOException {
+		//2 * 3 is a SCALAR, but the evaluator has no value for it
+		String input = "X := 2 * 3;\nY := X;\np { width: X; }\na { color: Y; }\n";
+		List<String> errors = new StreamingCompiler().compile(new StringReader(input), new StringBuilder());
+		assertEquals(2, errors.size());
+		assertEquals(compile(input).getErrors(), errors);
+	}
+
+	@Test
+	void testSyntaxErrorsArePerStatement() throws IOException {
+		String input = "p { width: 10px + ; }\na { width: #ff0000; }\n.b { height: 5px; }\n";
+		StringBuilder out = new StringBuilder();
+		List<String> errors = new StreamingCompiler().compile(new StringReader(input), out);
+
+		//The syntax error is the same, but unlike a Pipeline the other statements are still compiled
+		Pipeline pipeline = new Pipeline();
+		pipeline.parseString(input);
+		assertFalse(pipeline.isParsed());
+		List<String> pipelineErrors = pipeline.getErrors();
+		assertEquals(1, pipelineErrors.size());
+		assertEquals(List.of(pipelineErrors.get(0), "ERROR: Property 'width': color not allowed"), errors);
+		assertEquals(compile(".b { height: 5px; }\n").generate(), out.toString());
+	}
+}
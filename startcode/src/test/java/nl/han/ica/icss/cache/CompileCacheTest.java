@@ -0,0 +1,127 @@
+package nl.han.ica.icss.cache;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CompileCacheTest {
+
+	@TempDir
+	Path directory;
+
+	@Test
+	void testHitReturnsStoredResult() throws IOException {
+		CompileCache cache = new CompileCache(directory, 1024 * 1024);
+		CompileCache.Entry first = cache.compile("p { width: 10px + 5px; }");
+		CompileCache.Entry second = cache.compile("p { width: 10px + 5px; }");
+
+		assertEquals(1, cache.getMisses());
+		assertEquals(1, cache.getHits());
+		assertEquals("p {\n  width: 15px;\n}\n", second.css);
+		assertEquals(first.css, second.css);
+	}
+
+	@Test
+	void testErrorsAreCached() throws IOException {
+		CompileCache cache = new CompileCache(directory, 1024 * 1024);
+		cache.compile("p { width: #ff0000; }");
+
+		//A second instance sees the entry written by the first one
+		CompileCache.Entry entry = new CompileCache(directory, 1024 * 1024).compile("p { width: #ff0000; }");
+		assertFalse(entry.isSuccess());
+		assertNull(entry.css);
+		assertEquals(1, entry.errors.size());
+	}
+
+	@Test
+	void testCompilerVersionIsPartOfKey() throws IOException {
+		CompileCache v1 = new CompileCache(directory, 1024 * 1024, "1");
+		CompileCache v2 = new CompileCache(directory, 1024 * 1024, "2");
+		assertNotEquals(v1.keyFor("p { }"), v2.keyFor("p { }"));
+
+		v1.compile("p { width: 1px; }");
+		v2.compile("p { width: 1px; }");
+		assertEquals(1, v2.getMisses());
+		assertEquals(0, v2.getHits());
+	}
+
+	@Test
+	void testDefaultVersionDependsOnBuild() {
+		//Without a jar manifest, the hash of the compiled classes still tells builds apart
+		String version = CompileCache.defaultCompilerVersion();
+		assertTrue(version.matches(".+/1/[0-9a-f]{16}"), version);
+		assertEquals(version, CompileCache.defaultCompilerVersion());
+	}
+
+	@Test
+	void testEvictsToSizeCap() throws IOException {
+		long cap = 200;
+		CompileCache cache = new CompileCache(directory, cap);
+		for (int i = 0; i < 20; i++) {
+			cache.compile("p { width: " + i + "px; }");
+		}
+		assertTrue(cache.getEvictions() > 0);
+		try (Stream<Path> files = Files.list(directory)) {
+			long total = files.filter(p -> p.toString().endsWith(".entry"))
+					.mapToLong(p -> p.toFile().length()).sum();
+			assertTrue(total <= cap);
+		}
+	}
+
+	@Test
+	void testSeesWritesOfOtherInstances() throws IOException {
+		//Two instances stand in for two processes, each only counting its own writes
+		CompileCache first = new CompileCache(directory, Long.MAX_VALUE);
+		first.compile("p { width: 1000px; }");
+		long entrySize;
+		try (Stream<Path> files = Files.list(directory)) {
+			entrySize = files.filter(p -> p.toString().endsWith(".entry")).findFirst().orElseThrow().toFile().length();
+		}
+		long cap = entrySize * CompileCache.RESCAN_WRITES * 3 / 2;
+		first = new CompileCache(directory, cap);
+		CompileCache second = new CompileCache(directory, cap);
+		for (int i = 1; i < CompileCache.RESCAN_WRITES; i++) {
+			first.compile("p { width: " + (1000 + i) + "px; }");
+		}
+		for (int i = 0; i < CompileCache.RESCAN_WRITES; i++) {
+			second.compile("p { width: " + (2000 + i) + "px; }");
+		}
+
+		assertTrue(second.getEvictions() > 0);
+		try (Stream<Path> files = Files.list(directory)) {
+			long total = files.filter(p -> p.toString().endsWith(".entry"))
+					.mapToLong(p -> p.toFile().length()).sum();
+			assertTrue(total <= cap);
+		}
+	}
+
+	@Test
+	void testConcurrentCompilesOverCap() throws Exception {
+		CompileCache cache = new CompileCache(directory, 300);
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+		try {
+			List<Future<CompileCache.Entry>> entries = new ArrayList<>();
+			for (int i = 0; i < 800; i++) {
+				String source = "p { width: " + i % 200 + "px; }";
+				entries.add(executor.submit(() -> cache.compile(source)));
+			}
+			for (int i = 0; i < entries.size(); i++) {
+				assertEquals("p {\n  width: " + i % 200 + "px;\n}\n", entries.get(i).get().css);
+			}
+		} finally {
+			executor.shutdown();
+		}
+		assertTrue(cache.getEvictions() > 0);
+	}
+}
@@ -0,0 +1,207 @@
+package nl.han.ica.icss.checker;
+
+import nl.han.ica.icss.Pipeline;
+import nl.han.ica.icss.ast.AST;
+import nl.han.ica.icss.ast.Operation;
+import nl.han.ica.icss.diagnostics.Diagnostic;
+import nl.han.ica.icss.diagnostics.Diagnostics;
+import nl.han.ica.icss.diagnostics.ErrorCode;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CheckerTest {
+
+	//Many rules, some valid and some with errors, reading globals that are reassigned
+	String manyRules(int count) {
+		StringBuilder input = new StringBuilder("W := 10px;\nC := #ff0000;\nF := TRUE;\n");
+		for (int i = 0; i < count; i++) {
+			if (i % 500 == 0) {
+				input.append("W := W + ").append(i).append("px;\n");
+			}
+			input.append(".r").append(i).append(" {\n");
+			input.append("\tL := W * ").append(i % 7).append(";\n");
+			switch (i % 5) {
+				case 0:
+					input.append("\twidth: L + C;\n");
+					break;
+				case 1:
+					input.append("\tif[F] { color: W; } else { height: L; }\n");
+					break;
+				case 2:
+					input.append("\tcolor: Undefined;\n");
+					break;
+				default:
+					input.append("\twidth: L - 2px;\n\tif[F] { background-color: C; }\n");
+			}
+			input.append("}\n");
+		}
+		return input.toString();
+	}
+
+	List<String> errorDescriptions(AST ast) {
+		List<String> descriptions = new ArrayList<>();
+		for (SemanticError error : ast.getErrors()) {
+			descriptions.add(error.description);
+		}
+		return descriptions;
+	}
+
+	@Test
+	void testParallelCheckMatchesSequential() {
+		String input = manyRules(5000);
+		Pipeline sequential = new Pipeline();
+		sequential.parseString(input);
+		assertFalse(sequential.check());
+
+		ForkJoinPool pool = new ForkJoinPool(4);
+		try {
+			Pipeline parallel = new Pipeline();
+			parallel.setParallelPool(pool);
+			parallel.parseString(input);
+			assertFalse(parallel.check());
+
+			assertEquals(sequential.getErrors(), parallel.getErrors());
+			assertEquals(errorDescriptions(sequential.getAST()), errorDescriptions(parallel.getAST()));
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	@Test
+	void testParallelCheckKeepsStatementOrder() {
+		String input = "p { width: #ff0000; }\nX := 1px + #ff0000;\na { height: X; }\nY := TRUE * 2;\n";
+		ForkJoinPool pool = new ForkJoinPool(4);
+		try {
+			for (int maxErrors : new int[]{Diagnostics.UNLIMITED, 1, 2}) {
+				Pipeline sequential = new Pipeline();
+				sequential.setMaxErrors(maxErrors);
+				sequential.setFailFast(true);
+				sequential.parseString(input);
+				assertFalse(sequential.check());
+
+				Pipeline parallel = new Pipeline();
+				parallel.setParallelPool(pool);
+				parallel.setMaxErrors(maxErrors);
+				parallel.setFailFast(true);
+				parallel.parseString(input);
+				assertFalse(parallel.check());
+
+				assertEquals(sequential.getErrors(), parallel.getErrors());
+			}
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	@Test
+	void testErrorsAreInTreeOrder() {
+		Pipeline pipeline = new Pipeline();
+		pipeline.parseString("p { color: Undefined; }\na { if[Undef] { width: #ff0000; } }\n");
+		assertFalse(pipeline.check());
+
+		List<String> expected = new ArrayList<>();
+		for (SemanticError error : pipeline.getAST().getErrors()) {
+			expected.add(error.toString());
+		}
+		assertEquals(expected, pipeline.getErrors());
+		assertEquals(5, expected.size());
+		assertTrue(expected.get(0).contains("only colors allowed"));
+		assertTrue(expected.get(1).contains("'Undefined'"));
+		assertTrue(expected.get(2).contains("If condition must be of type BOOL"));
+		assertTrue(expected.get(3).contains("'Undef'"));
+		assertTrue(expected.get(4).contains("color not allowed"));
+	}
+
+	@Test
+	void testDiagnosticsCarryCodeAndNode() {
+		Pipeline pipeline = new Pipeline();
+		pipeline.parseString(manyRules(5));
+		assertFalse(pipeline.check());
+
+		List<Diagnostic> diagnostics = pipeline.getDiagnostics().getAll();
+		assertEquals(pipeline.getErrors().size(), diagnostics.size());
+		Diagnostic first = diagnostics.get(0);
+		assertEquals(ErrorCode.OPERAND_TYPES_DIFFER, first.code);
+		assertTrue(first.node instanceof Operation);
+		assertSame(first, first.node.getDiagnostic());
+		assertEquals("ERROR: Literals of + or - must be of the same type. Found: PIXEL and COLOR", pipeline.getErrors().get(0));
+	}
+
+	@Test
+	void testMaxErrorsKeepsFirstErrors() {
+		String input = manyRules(5000);
+		Pipeline all = new Pipeline();
+		all.parseString(input);
+		assertFalse(all.check());
+		assertTrue(all.getErrors().size() > 10);
+
+		Pipeline capped = new Pipeline();
+		capped.setMaxErrors(10);
+		capped.parseString(input);
+		assertFalse(capped.check());
+		assertEquals(all.getErrors().subList(0, 10), capped.getErrors());
+		//Without fail-fast the whole tree is still checked
+		assertEquals(all.getDiagnostics().getFound(), capped.getDiagnostics().getFound());
+		assertEquals(errorDescriptions(all.getAST()), errorDescriptions(capped.getAST()));
+	}
+
+	@Test
+	void testFailFastStopsAtMaxErrors() {
+		String input = manyRules(5000);
+		Pipeline all = new Pipeline();
+		all.parseString(input);
+		all.check();
+
+		ForkJoinPool pool = new ForkJoinPool(4);
+		try {
+			for (ForkJoinPool parallelPool : new ForkJoinPool[]{null, pool}) {
+				Pipeline failFast = new Pipeline();
+				failFast.setParallelPool(parallelPool);
+				failFast.setMaxErrors(10);
+				failFast.setFailFast(true);
+				failFast.parseString(input);
+				assertFalse(failFast.check());
+				assertEquals(all.getErrors().subList(0, 10), failFast.getErrors());
+				assertTrue(errorDescriptions(failFast.getAST()).size() < errorDescriptions(all.getAST()).size());
+			}
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	@Test
+	void testFailFastStopsParsing() {
+		Pipeline pipeline = new Pipeline();
+		pipeline.setTwoStageParsing(false);
+		pipeline.setMaxErrors(1);
+		pipeline.setFailFast(true);
+		pipeline.parseString("p { width: ; }\na { color: ; }\n.b { height: ; }");
+		assertFalse(pipeline.isParsed());
+		assertEquals(1, pipeline.getErrors().size());
+		Diagnostic error = pipeline.getDiagnostics().getAll().get(0);
+		assertEquals(ErrorCode.SYNTAX, error.code);
+		assertEquals(1, error.getLine());
+		assertEquals(11, error.getColumn());
+	}
+
+	@Test
+	void testDiagnosticsPointAtTheirNode() {
+		Pipeline pipeline = new Pipeline();
+		pipeline.parseString("W := 10px;\np {\n\twidth: W;\n\tcolor: W + #ff0000;\n}\n");
+		assertFalse(pipeline.check());
+
+		List<Diagnostic> diagnostics = pipeline.getDiagnostics().getAll();
+		assertEquals(2, diagnostics.size());
+		//The declaration, then its operation W + #ff0000
+		assertEquals(4, diagnostics.get(0).getLine());
+		assertEquals(1, diagnostics.get(0).getColumn());
+		assertEquals(ErrorCode.ONLY_COLORS_ALLOWED, diagnostics.get(0).code);
+		assertEquals(4, diagnostics.get(1).getLine());
+		assertEquals(8, diagnostics.get(1).getColumn());
+	}
+}
@@ -0,0 +1,118 @@
+package nl.han.ica.icss.cli;
+
+import nl.han.ica.icss.Pipeline;
+import nl.han.ica.icss.ast.ASTNode;
+import nl.han.ica.icss.ast.Stylerule;
+import nl.han.ica.icss.metrics.RuleProfiler;
+import nl.han.ica.icss.metrics.StageTimer;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BatchCompilerTest {
+
+	String readResource(String resource) throws IOException {
+		InputStream inputStream = this.getClass().getClassLoader().getResourceAsStream(resource);
+		return new String(inputStream.readAllBytes(), StandardCharsets.UTF_8);
+	}
+
+	Pipeline compile(String input) {
+		Pipeline pipeline = new Pipeline();
+		pipeline.parseString(input);
+		if (pipeline.isParsed() && pipeline.check()) {
+			pipeline.transform();
+		}
+		return pipeline;
+	}
+
+	@Test
+	void testParallelCompileMatchesSequentialPipeline(@TempDir Path dir) throws IOException {
+		TreeMap<Path, String> sources = new TreeMap<>();
+		for (int i = 0; i < 40; i++) {
+			String level = "level" + i % 4 + ".icss";
+			sources.put(dir.resolve("d" + i % 3).resolve("f" + i + ".icss"), readResource(level));
+		}
+		sources.put(dir.resolve("d0").resolve("semantic.icss"), "p { width: #ff0000; }\n");
+		sources.put(dir.resolve("d1").resolve("syntax.icss"), "p { width: 10px + ; }\n");
+		for (Map.Entry<Path, String> source : sources.entrySet()) {
+			Files.createDirectories(source.getKey().getParent());
+			Files.writeString(source.getKey(), source.getValue());
+		}
+
+		BatchCompiler compiler = new BatchCompiler(4);
+		List<BatchCompiler.Result> results = compiler.compileTree(dir);
+
+		assertEquals(new ArrayList<>(sources.keySet()), results.stream().map(result -> result.source).collect(Collectors.toList()));
+		StringBuilder expectedReport = new StringBuilder();
+		for (BatchCompiler.Result result : results) {
+			Pipeline expected = compile(sources.get(result.source));
+			assertEquals(expected.getErrors(), result.errors, result.source.toString());
+			Path target = BatchCompiler.targetFor(result.source);
+			if (result.isSuccess()) {
+				assertEquals(expected.generate(), Files.readString(target));
+			} else {
+				assertFalse(Files.exists(target));
+				for (String error : result.errors) {
+					expectedReport.append(result.source).append(": ").append(error).append(System.lineSeparator());
+				}
+			}
+		}
+
+		PrintStream err = System.err;
+		ByteArrayOutputStream report = new ByteArrayOutputStream();
+		System.setErr(new PrintStream(report, true, StandardCharsets.UTF_8));
+		try {
+			assertFalse(compiler.report(results));
+		} finally {
+			System.setErr(err);
+		}
+		assertEquals(expectedReport.toString(), report.toString(StandardCharsets.UTF_8));
+	}
+
+	@Test
+	void testFailedFileDoesNotStopBatch(@TempDir Path dir) throws IOException {
+		Files.writeString(dir.resolve("a.icss"), "p { width: 1px; }\n");
+		Files.writeString(dir.resolve("b.icss"), "#boom { width: 2px; }\n");
+		Files.writeString(dir.resolve("c.icss"), "p { width: #ff0000; }\n");
+		Files.writeString(dir.resolve("d.icss"), "p { height: 4px; }\n");
+		Files.writeString(dir.resolve("b.css"), "stale");
+		Files.writeString(dir.resolve("c.css"), "stale");
+
+		BatchCompiler compiler = new BatchCompiler(2);
+		//Stands in for a bug in the compiler that only some input runs into
+		compiler.setProfiler(new RuleProfiler() {
+			@Override
+			public StageTimer begin(ASTNode node) {
+				if (node instanceof Stylerule && ((Stylerule) node).selectors.get(0).toString().contains("boom")) {
+					throw new IllegalStateException("boom");
+				}
+				return super.begin(node);
+			}
+		});
+		List<BatchCompiler.Result> results = compiler.compileTree(dir);
+
+		assertEquals(4, results.size());
+		assertTrue(results.get(0).isSuccess());
+		assertEquals(List.of("java.lang.IllegalStateException: boom"), results.get(1).errors);
+		assertFalse(results.get(2).isSuccess());
+		assertTrue(results.get(3).isSuccess());
+		assertTrue(Files.exists(dir.resolve("a.css")));
+		assertFalse(Files.exists(dir.resolve("b.css")));
+		assertFalse(Files.exists(dir.resolve("c.css")));
+		assertTrue(Files.exists(dir.resolve("d.css")));
+	}
+}
@@ -0,0 +1,58 @@
+package nl.han.ica.icss.cli;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class WatchCompilerTest {
+
+	//Waits until condition holds, for at most ten seconds
+	void await(java.util.function.BooleanSupplier condition) throws InterruptedException {
+		long deadline = System.nanoTime() + 10_000_000_000L;
+		while (!condition.getAsBoolean()) {
+			assertTrue(System.nanoTime() < deadline, "Timed out");
+			Thread.sleep(10);
+		}
+	}
+
+	@Test
+	void testRecompilesOnlyChangedFiles(@TempDir Path dir) throws Exception {
+		Path first = dir.resolve("first.icss");
+		Path second = dir.resolve("second.icss");
+		Files.writeString(first, "p { width: 10px; }");
+		Files.writeString(second, "a { color: #ff0000; }");
+
+		WatchCompiler compiler = new WatchCompiler(dir, 50);
+		Thread watcher = new Thread(() -> {
+			try {
+				compiler.run();
+			} catch (Exception e) {
+				throw new RuntimeException(e);
+			}
+		});
+		watcher.start();
+		try {
+			await(() -> compiler.getCompiles() == 2);
+			BatchCompiler.Result secondResult = compiler.getResult(second);
+
+			Files.writeString(first, "p { width: 20px; }");
+			await(() -> compiler.getCompiles() == 3);
+			assertEquals("p {\n  width: 20px;\n}\n", Files.readString(dir.resolve("first.css")));
+			assertSame(secondResult, compiler.getResult(second));
+
+			//A save without changes does not compile again
+			Files.writeString(first, "p { width: 20px; }");
+			Files.writeString(second, "a { color: 10px; }");
+			await(() -> compiler.getResult(second) != secondResult);
+			assertEquals(4, compiler.getCompiles());
+			assertFalse(compiler.getResult(second).isSuccess());
+		} finally {
+			compiler.close();
+			watcher.join();
+		}
+	}
+}
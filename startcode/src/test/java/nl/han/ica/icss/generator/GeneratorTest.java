@@ -0,0 +1,74 @@
+package nl.han.ica.icss.generator;
+
+import nl.han.ica.icss.Pipeline;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class GeneratorTest {
+
+	Pipeline transformedPipeline(String resource) throws IOException {
+		InputStream inputStream = this.getClass().getClassLoader().getResourceAsStream(resource);
+		Pipeline pipeline = new Pipeline();
+		pipeline.parseString(new String(inputStream.readAllBytes(), StandardCharsets.UTF_8));
+		assertTrue(pipeline.check());
+		pipeline.transform();
+		return pipeline;
+	}
+
+	@Test
+	void testChannelOutputMatchesString() throws IOException {
+		Pipeline pipeline = transformedPipeline("level3.icss");
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+		//A tiny buffer forces many intermediate flushes
+		ChannelAppendable out = new ChannelAppendable(Channels.newChannel(bytes), 7);
+		new Generator().generate(pipeline.getAST(), out);
+		out.flush();
+
+		assertEquals(pipeline.generate(), bytes.toString(StandardCharsets.US_ASCII));
+	}
+
+	@Test
+	void testAppendInt() throws IOException {
+		int[] values = {0, 7, 10, 520, -45, Integer.MAX_VALUE, Integer.MIN_VALUE};
+		for (int value : values) {
+			StringBuilder out = new StringBuilder();
+			Generator.appendInt(value, out);
+			assertEquals(Integer.toString(value), out.toString());
+		}
+	}
+
+	@Test
+	void testParallelOutputMatchesSequential() throws IOException {
+		StringBuilder input = new StringBuilder("W := 3px;\n");
+		for (int i = 0; i < 2000; i++) {
+			input.append(i % 2 == 0 ? "#id" : ".class").append(i)
+					.append(" { width: W * ").append(i).append("; color: #00ff00; height: ").append(i % 100).append("%; }\n");
+		}
+		Pipeline pipeline = new Pipeline();
+		pipeline.parseString(input.toString());
+		assertTrue(pipeline.check());
+		pipeline.transform();
+		String sequential = new Generator().generate(pipeline.getAST());
+
+		ForkJoinPool pool = new ForkJoinPool(3);
+		try {
+			Generator parallel = new Generator(pool);
+			assertEquals(sequential, parallel.generate(pipeline.getAST()));
+
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			parallel.generate(pipeline.getAST(), Channels.newChannel(bytes));
+			assertEquals(sequential, bytes.toString(StandardCharsets.US_ASCII));
+		} finally {
+			pool.shutdown();
+		}
+	}
+}
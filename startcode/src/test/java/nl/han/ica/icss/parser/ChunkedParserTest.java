@@ -0,0 +1,102 @@
+package nl.han.ica.icss.parser;
+
+import nl.han.ica.icss.Pipeline;
+import nl.han.ica.icss.ast.AST;
+import org.antlr.v4.runtime.CharStreams;
+import org.antlr.v4.runtime.Token;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ChunkedParserTest {
+
+	ForkJoinPool pool = new ForkJoinPool(4);
+
+	@AfterEach
+	void shutdown() {
+		pool.shutdown();
+	}
+
+	String largeStylesheet(int rules) {
+		StringBuilder input = new StringBuilder("W := 10px;\n");
+		for (int i = 0; i < rules; i++) {
+			input.append(".r").append(i).append(" {\n\tL := W * ").append(i % 5).append(";\n")
+					.append("\tif[TRUE] { width: L + 1px; } else { height: 5%; }\n}\n");
+			if (i % 100 == 0) {
+				input.append("W := W + 1px;");
+			}
+		}
+		return input.toString();
+	}
+
+	Pipeline parse(String input, ForkJoinPool pool) {
+		Pipeline pipeline = new Pipeline();
+		pipeline.setParallelPool(pool);
+		pipeline.parseString(input);
+		return pipeline;
+	}
+
+	@Test
+	void testChunkedParseMatchesSequential() {
+		String input = largeStylesheet(10000);
+		ChunkedParser parser = new ChunkedParser(pool);
+		AST chunked = parser.parse(input);
+		assertTrue(parser.getLastChunkCount() > 1);
+
+		AST sequential = parse(input, null).getAST();
+		assertEquals(sequential, chunked);
+		assertEquals(sequential.toString(), chunked.toString());
+		assertEquals(Fixtures.positions(sequential.root), Fixtures.positions(chunked.root));
+	}
+
+	@Test
+	void testChunksEndAfterStatements() {
+		String input = largeStylesheet(2000);
+		List<ChunkedParser.Chunk> chunks = ChunkedParser.split(input, 1000);
+		assertTrue(chunks.size() > 10);
+		assertEquals(0, chunks.get(0).start);
+		for (int i = 1; i < chunks.size(); i++) {
+			assertEquals(chunks.get(i - 1).end, chunks.get(i).start);
+			char last = input.charAt(chunks.get(i - 1).end - 1);
+			assertTrue(last == '}' || last == ';');
+		}
+		assertEquals(input.length(), chunks.get(chunks.size() - 1).end);
+	}
+
+	@Test
+	void testChunkTokensHaveOriginalPositions() {
+		String input = largeStylesheet(500);
+		List<? extends Token> expected = new ICSSLexer(CharStreams.fromString(input)).getAllTokens();
+		int next = 0;
+		for (ChunkedParser.Chunk chunk : ChunkedParser.split(input, 1000)) {
+			ICSSLexer lexer = new ICSSLexer(new WindowCharStream(input, chunk.start, chunk.end));
+			lexer.setLine(chunk.line);
+			lexer.setCharPositionInLine(chunk.column);
+			for (Token token : lexer.getAllTokens()) {
+				Token original = expected.get(next++);
+				assertEquals(original.getText(), token.getText());
+				assertEquals(original.getStartIndex(), token.getStartIndex());
+				assertEquals(original.getLine(), token.getLine());
+				assertEquals(original.getCharPositionInLine(), token.getCharPositionInLine());
+			}
+		}
+		assertEquals(expected.size(), next);
+	}
+
+	@Test
+	void testSyntaxErrorFallsBackToWholeParse() {
+		String input = largeStylesheet(10000);
+		int middle = input.indexOf(".r5000 {");
+		String broken = input.substring(0, middle) + ".r5000 { width 10px; }\n" + input.substring(middle);
+		assertNull(new ChunkedParser(pool).parse(broken));
+
+		Pipeline sequential = parse(broken, null);
+		Pipeline parallel = parse(broken, pool);
+		assertFalse(parallel.isParsed());
+		assertEquals(sequential.getErrors(), parallel.getErrors());
+	}
+}
@@ -11,8 +11,25 @@ import nl.han.ica.icss.ast.selectors.ClassSelector;
 import nl.han.ica.icss.ast.selectors.IdSelector;
 import nl.han.ica.icss.ast.selectors.TagSelector;
 
+import java.util.ArrayList;
+import java.util.List;
+
 public class Fixtures {
 
+	//The label and source offsets of every node below node, in tree order
+	public static List<String> positions(ASTNode node) {
+		List<String> positions = new ArrayList<>();
+		collectPositions(node, positions);
+		return positions;
+	}
+	private static void collectPositions(ASTNode node, List<String> positions) {
+		positions.add(node.getNodeLabel() + " " + node.getStartOffset() + "-" + node.getStopOffset());
+		int count = node.getChildCount();
+		for (int i = 0; i < count; i++) {
+			collectPositions(node.getChild(i), positions);
+		}
+	}
+
     public static AST uncheckedLevel0() {
 		Stylesheet stylesheet = new Stylesheet();
 		/*
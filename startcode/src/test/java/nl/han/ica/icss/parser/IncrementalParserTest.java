@@ -0,0 +1,87 @@
+package nl.han.ica.icss.parser;
+
+import nl.han.ica.icss.ast.AST;
+import nl.han.ica.icss.ast.ASTNode;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class IncrementalParserTest {
+
+	String readResource(String resource) throws IOException {
+		InputStream inputStream = this.getClass().getClassLoader().getResourceAsStream(resource);
+		return new String(inputStream.readAllBytes(), StandardCharsets.UTF_8);
+	}
+
+	void assertSameAsFullParse(IncrementalParser incremental) {
+		IncrementalParser full = new IncrementalParser();
+		AST expected = full.parse(incremental.getSource());
+		assertEquals(full.getErrors(), incremental.getErrors());
+		//An AST with syntax errors may hold null children, those are not comparable
+		if (full.getErrors().isEmpty()) {
+			assertEquals(expected, incremental.getAST());
+			assertEquals(expected.toString(), incremental.getAST().toString());
+			assertEquals(Fixtures.positions(expected.root), Fixtures.positions(incremental.getAST().root));
+		}
+	}
+
+	@Test
+	void testEditInsideRuleReparsesOnlyThatRule() throws IOException {
+		String input = readResource("level3.icss");
+		IncrementalParser parser = new IncrementalParser();
+		parser.parse(input);
+		ASTNode firstStatement = parser.getAST().root.body.get(0);
+
+		int offset = input.indexOf("width: ParWidth + 20px") + "width: ".length();
+		parser.edit(offset, "ParWidth".length(), "ParWidth * 2");
+
+		assertEquals(1, parser.getLastReparsedStatements());
+		assertSame(firstStatement, parser.getAST().root.body.get(0));
+		assertSameAsFullParse(parser);
+	}
+
+	@Test
+	void testEditsThatJoinAndSplitStatements() throws IOException {
+		IncrementalParser parser = new IncrementalParser();
+		parser.parse("A := 1px;\np { width: A; }\na { color: #ff0000; }\n");
+
+		//Remove a closing brace: the rule swallows the next one and the parse fails
+		String source = parser.getSource();
+		parser.edit(source.indexOf("}"), 1, "");
+		assertSameAsFullParse(parser);
+
+		//Put it back, then add a statement in between
+		source = parser.getSource();
+		parser.edit(source.indexOf("\na {"), 0, "}");
+		assertSameAsFullParse(parser);
+		parser.edit(parser.getSource().indexOf("a {"), 0, "B := 2px;\n");
+		assertSameAsFullParse(parser);
+
+		//Extend an identifier at the start of a statement
+		parser.edit(parser.getSource().indexOf("a {"), 0, "xx");
+		assertSameAsFullParse(parser);
+	}
+
+	@Test
+	void testRandomEditsMatchFullParse() throws IOException {
+		String input = readResource("level3.icss");
+		String[] snippets = {"", " ", "}", "{", ";", "10px", "p { color: #00ff00; }", "X := TRUE;", "+ 2px", "\n"};
+		Random random = new Random(7);
+		for (int run = 0; run < 200; run++) {
+			IncrementalParser parser = new IncrementalParser();
+			parser.parse(input);
+			for (int edit = 0; edit < 5; edit++) {
+				String source = parser.getSource();
+				int offset = random.nextInt(source.length() + 1);
+				int length = random.nextInt(Math.min(12, source.length() - offset) + 1);
+				parser.edit(offset, length, snippets[random.nextInt(snippets.length)]);
+				assertSameAsFullParse(parser);
+			}
+		}
+	}
+}
@@ -0,0 +1,71 @@
+package nl.han.ica.icss.server;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CompileServerTest {
+
+	CompileServer server;
+	HttpClient client = HttpClient.newHttpClient();
+
+	@BeforeEach
+	void startServer() throws Exception {
+		server = new CompileServer(0, 4);
+		server.start();
+	}
+
+	@AfterEach
+	void stopServer() {
+		server.stop();
+	}
+
+	HttpRequest compileRequest(String source) {
+		return HttpRequest.newBuilder(URI.create("http://localhost:" + server.getPort() + "/compile"))
+				.POST(HttpRequest.BodyPublishers.ofString(source))
+				.build();
+	}
+
+	@Test
+	void testCompileReturnsCssOrErrors() throws Exception {
+		HttpResponse<String> css = client.send(compileRequest("W := 5px;\np { width: W * 2; }"),
+				HttpResponse.BodyHandlers.ofString());
+		assertEquals(200, css.statusCode());
+		assertEquals("p {\n  width: 10px;\n}\n", css.body());
+
+		HttpResponse<String> errors = client.send(compileRequest("p { color: 10px; }"),
+				HttpResponse.BodyHandlers.ofString());
+		assertEquals(422, errors.statusCode());
+		assertEquals("{\"errors\": [\"ERROR: Property 'color': only colors allowed\"]}\n", errors.body());
+	}
+
+	@Test
+	void testConcurrentRequestsAreCounted() throws Exception {
+		List<CompletableFuture<HttpResponse<String>>> responses = new ArrayList<>();
+		for (int i = 0; i < 50; i++) {
+			responses.add(client.sendAsync(compileRequest(".c" + i + " { height: " + i + "%; }"),
+					HttpResponse.BodyHandlers.ofString()));
+		}
+		for (int i = 0; i < responses.size(); i++) {
+			HttpResponse<String> response = responses.get(i).join();
+			assertEquals(200, response.statusCode());
+			assertEquals(".c" + i + " {\n  height: " + i + "%;\n}\n", response.body());
+		}
+
+		assertEquals(50, server.getLatencies().getCount());
+		assertTrue(server.getLatencies().percentile(99) >= server.getLatencies().percentile(50));
+		HttpResponse<String> stats = client.send(HttpRequest.newBuilder(
+				URI.create("http://localhost:" + server.getPort() + "/stats")).build(), HttpResponse.BodyHandlers.ofString());
+		assertTrue(stats.body().startsWith("{\"requests\": 50, \"failures\": 0,"), stats.body());
+	}
+}
@@ -0,0 +1,145 @@
+package nl.han.ica.icss.transforms;
+
+import nl.han.ica.icss.Pipeline;
+import nl.han.ica.icss.ast.AST;
+import nl.han.ica.icss.ast.Stylerule;
+import nl.han.ica.icss.generator.Generator;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class EvaluatorTest {
+
+	String compile(String input) {
+		return compile(input, null);
+	}
+
+	String compile(String input, ForkJoinPool pool) {
+		Pipeline pipeline = new Pipeline();
+		pipeline.setParallelPool(pool);
+		pipeline.parseString(input);
+		assertTrue(pipeline.check(), pipeline.getErrors().toString());
+		pipeline.transform();
+		return pipeline.generate();
+	}
+
+	@Test
+	void testReassignedVariableKeepsEarlierValue() {
+		String css = compile("W := 10px;\n"
+				+ "p { width: W; }\n"
+				+ "W := W + 5px;\n"
+				+ "a { width: W; }\n");
+		assertEquals(compile("p { width: 10px; }\na { width: 15px; }\n"), css);
+	}
+
+	@Test
+	void testRuleLocalVariables() {
+		String css = compile("W := 10px;\n"
+				+ "p { W := W * 2; width: W; H := W + 1px; if[TRUE] { height: H; } }\n"
+				+ "a { width: W; }\n");
+		assertEquals(compile("p { width: 20px; height: 21px; }\na { width: 10px; }\n"), css);
+	}
+
+	@Test
+	void testParallelTransformMatchesSequential() {
+		StringBuilder input = new StringBuilder("W := 10px;\nP := 5%;\nF := TRUE;\n");
+		for (int i = 0; i < 3000; i++) {
+			if (i % 400 == 0) {
+				input.append("W := W + ").append(i).append("px;\nF := ").append(i % 800 == 0 ? "FALSE" : "TRUE").append(";\n");
+			}
+			input.append("#r").append(i).append(" {\n")
+					.append("\tL := W * ").append(i % 9).append(" - 1px;\n")
+					.append("\twidth: L + W;\n")
+					.append("\tif[F] { height: P * 2; } else { height: L; if[TRUE] { color: #00ff00; } }\n")
+					.append("}\n");
+		}
+		ForkJoinPool pool = new ForkJoinPool(4);
+		try {
+			assertEquals(compile(input.toString()), compile(input.toString(), pool));
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	AST checked(String input) {
+		Pipeline pipeline = new Pipeline();
+		pipeline.parseString(input);
+		assertTrue(pipeline.check(), pipeline.getErrors().toString());
+		return pipeline.getAST();
+	}
+
+	@Test
+	void testEvaluateLeavesInputUnchanged() {
+		String input = "W := 10px;\n"
+				+ "p { width: W + 5px; if[TRUE] { height: W; } }\n"
+				+ "a { color: #ff0000; }\n";
+		AST ast = checked(input);
+		String before = ast.toString();
+		AST result = new Evaluator().evaluate(ast);
+
+		assertEquals(before, ast.toString());
+		assertEquals(compile(input), new Generator().generate(result));
+		//A rule without expressions or if clauses is shared, as are the global assignments
+		assertSame(ast.root.body.get(2), result.root.body.get(2));
+		assertSame(ast.root.body.get(0), result.root.body.get(0));
+		Stylerule rule = (Stylerule) result.root.body.get(1);
+		assertNotSame(ast.root.body.get(1), rule);
+		assertSame(((Stylerule) ast.root.body.get(1)).selectors, rule.selectors);
+		assertEquals(ast.root.body.get(1).getStartOffset(), rule.getStartOffset());
+	}
+
+	@Test
+	void testConcurrentEvaluationsOfOneAST() throws Exception {
+		StringBuilder input = new StringBuilder("W := 10px;\nF := TRUE;\n");
+		for (int i = 0; i < 500; i++) {
+			input.append("#r").append(i).append(" { width: W * ").append(i % 7)
+					.append("; if[F] { height: W + 1px; } else { height: 2px; } }\n");
+		}
+		String expected = compile(input.toString());
+		//Not checked, so the evaluations also race to resolve the variables
+		Pipeline pipeline = new Pipeline();
+		pipeline.parseString(input.toString());
+		AST ast = pipeline.getAST();
+
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		ForkJoinPool pool = new ForkJoinPool(2);
+		try {
+			List<Future<String>> results = new ArrayList<>();
+			for (int i = 0; i < 16; i++) {
+				ForkJoinPool evaluatorPool = i % 2 == 0 ? null : pool;
+				results.add(executor.submit(() -> new Generator().generate(new Evaluator(evaluatorPool).evaluate(ast))));
+			}
+			for (Future<String> result : results) {
+				assertEquals(expected, result.get());
+			}
+		} finally {
+			executor.shutdown();
+			pool.shutdown();
+		}
+	}
+
+	@Test
+	void testKeepCheckedASTAllowsIncrementalEdits() {
+		String input = "W := 10px;\np { width: W + 5px; }\na { color: #ff0000; }\n";
+		Pipeline pipeline = new Pipeline();
+		pipeline.setKeepCheckedAST(true);
+		pipeline.parseString(input);
+		assertTrue(pipeline.check());
+		AST checked = pipeline.getAST();
+		pipeline.transform();
+		assertSame(checked, pipeline.getCheckedAST());
+		assertEquals(compile(input), pipeline.generate());
+
+		pipeline.applyEdit(input.indexOf("5px"), 3, "7px");
+		assertTrue(pipeline.check());
+		pipeline.transform();
+		assertEquals(compile(input.replace("5px", "7px")), pipeline.generate());
+	}
+}
@@ -0,0 +1,87 @@
+package nl.han.ica.icss.transforms;
+
+import nl.han.ica.icss.Pipeline;
+import nl.han.ica.icss.ast.AST;
+import nl.han.ica.icss.ast.Literal;
+import nl.han.ica.icss.ast.literals.BoolLiteral;
+import nl.han.ica.icss.ast.literals.ColorLiteral;
+import nl.han.ica.icss.ast.literals.PixelLiteral;
+import nl.han.ica.icss.ast.types.ExpressionType;
+import nl.han.ica.icss.diagnostics.Diagnostics;
+import nl.han.ica.icss.diagnostics.ErrorCode;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class VariableOverridesTest {
+
+	String readResource(String resource) throws IOException {
+		InputStream inputStream = this.getClass().getClassLoader().getResourceAsStream(resource);
+		return new String(inputStream.readAllBytes(), StandardCharsets.UTF_8);
+	}
+
+	Pipeline check(String input) {
+		Pipeline pipeline = new Pipeline();
+		pipeline.parseString(input);
+		assertTrue(pipeline.check(), pipeline.getErrors().toString());
+		return pipeline;
+	}
+
+	String compile(String input) {
+		Pipeline pipeline = check(input);
+		pipeline.transform();
+		return pipeline.generate();
+	}
+
+	@Test
+	void testOverridesMatchEditedSource() throws IOException {
+		String input = readResource("level3.icss");
+		String before = check(input).getAST().toString();
+		VariableOverrides overrides = new VariableOverrides(check(input).getAST());
+		assertEquals(List.of("LinkColor", "ParWidth", "AdjustColor", "UseLinkColor"), List.copyOf(overrides.getTypes().keySet()));
+		assertEquals(ExpressionType.PIXEL, overrides.getTypes().get("ParWidth"));
+
+		Map<String, Literal> values = Map.of("LinkColor", new ColorLiteral("#00ff00"),
+				"ParWidth", new PixelLiteral(320), "UseLinkColor", new BoolLiteral(true));
+		Diagnostics diagnostics = new Diagnostics();
+		String css = overrides.generate(values, diagnostics);
+		assertFalse(diagnostics.hasErrors());
+		assertEquals(compile(input.replace("#ff0000", "#00ff00").replace("500px", "320px")
+				.replace("UseLinkColor := FALSE", "UseLinkColor := TRUE")), css);
+
+		//The AST is left as it is, so without values it still compiles to the original
+		assertEquals(before, overrides.getAST().toString());
+		assertEquals(compile(input), overrides.generate(Map.of(), diagnostics));
+	}
+
+	@Test
+	void testOverrideReplacesFirstAssignment() {
+		String input = "W := 10px;\np { width: W; }\nW := W + 5px;\na { width: W; }\n";
+		VariableOverrides overrides = new VariableOverrides(check(input).getAST());
+		String css = overrides.generate(Map.of("W", new PixelLiteral(20)), new Diagnostics());
+		assertEquals(compile("p { width: 20px; }\na { width: 25px; }\n"), css);
+	}
+
+	@Test
+	void testOverridesAreTypeChecked() {
+		String input = "Color := #ff0000;\nW := 10px;\np { color: Color; width: W; }\n";
+		VariableOverrides overrides = new VariableOverrides(check(input).getAST());
+		Diagnostics diagnostics = new Diagnostics();
+		AST result = overrides.evaluate(Map.of("Color", new PixelLiteral(10), "H", new PixelLiteral(10)), diagnostics);
+
+		assertNull(result);
+		assertEquals(2, diagnostics.getAll().size());
+		ErrorCode first = diagnostics.getAll().get(0).code;
+		ErrorCode second = diagnostics.getAll().get(1).code;
+		assertEquals(Set.of(ErrorCode.GLOBAL_TYPE, ErrorCode.UNKNOWN_GLOBAL), Set.of(first, second));
+		assertTrue(diagnostics.getMessages().contains("ERROR: Variable 'Color' is of type COLOR, not PIXEL"),
+				diagnostics.getMessages().toString());
+	}
+}